@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.api;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to define an index of a table.
+ * <p>
+ * The index field must be defined for a {@link TableDef} implementation and must match
+ * <br>{@code public static final String INDEX_NAME = "index_name";}
+ * <br>The index is created as {@code _simpl_table_name_index_name}.
+ * Only indexes with this prefix are dropped when they are no longer defined,
+ * indexes created otherwise are left alone.
+ * </p>
+ * <p>
+ * Partial indexes require SQLite 3.8.0 and expression indexes require SQLite 3.9.0.
+ * </p>
+ */
+@Documented
+@Retention(value = RetentionPolicy.RUNTIME)
+@Target(value = {ElementType.FIELD})
+public @interface Index {
+    /**
+     * @return the indexed columns or expressions, optionally with collation and sort order
+     */
+    String[] columns();
+
+    /**
+     * @return if the index should be unique
+     */
+    boolean unique() default false;
+
+    /**
+     * @return the expression of a partial index or an empty string
+     */
+    String where() default "";
+}
@@ -41,4 +41,12 @@ public @interface Table {
      * @return if table should only be created if non-existing
      */
     boolean ifNotExists() default false;
+
+    /**
+     * Lazy tables are neither created nor upgraded before their first query, insert, update or delete
+     * through {@code SimplDb}. Direct access with {@code SQLiteDatabase} does not create the table.
+     *
+     * @return if table should only be created when first used through {@code SimplDb}
+     */
+    boolean lazy() default false;
 }
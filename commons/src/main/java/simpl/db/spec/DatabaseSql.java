@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.spec;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import simpl.db.internal.SimplName;
+
+/**
+ * Builds the statements defining a database.
+ * Shared by the annotation processor and the runtime to create the same schema.
+ */
+public final class DatabaseSql {
+    public static final String SCHEMA_TABLE = "_simpl_schema";
+    public static final String SCHEMA_TABLE_SQL = "CREATE TABLE IF NOT EXISTS " + SCHEMA_TABLE
+            + " (name TEXT PRIMARY KEY, fingerprint TEXT NOT NULL)";
+    public static final String SCRIPT_EXTENSION = ".sql";
+
+    private DatabaseSql() {
+    }
+
+    /**
+     * Creates a script building an empty database as created by {@code SimplDb}, including the
+     * fingerprints of all tables. Seed data and {@code ANALYZE} can be appended to prebuild a database.
+     *
+     * @param version    of the database
+     * @param tableSpecs compiled
+     * @return the statements separated by {@code ;} and a new line
+     */
+    public static String getScript(int version, Iterable<TableSpec> tableSpecs) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("PRAGMA user_version=").append(version).append(";\n");
+        sql.append(SCHEMA_TABLE_SQL).append(";\n");
+        for (TableSpec tableSpec : tableSpecs) {
+            sql.append(tableSpec.sql).append(";\n");
+            for (Map.Entry<String, String> index : new TreeMap<>(tableSpec.indexSql).entrySet())
+                sql.append(index.getValue()).append(";\n");
+            sql.append("INSERT INTO ").append(SCHEMA_TABLE).append(" VALUES (");
+            appendLiteral(sql, SimplName.from(tableSpec.name)).append(", ");
+            appendLiteral(sql, tableSpec.fingerprint).append(");\n");
+        }
+        return sql.toString();
+    }
+
+    private static StringBuilder appendLiteral(StringBuilder sql, String value) {
+        return sql.append('\'').append(value.replace("'", "''")).append('\'');
+    }
+}
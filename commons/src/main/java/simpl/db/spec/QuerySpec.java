@@ -16,15 +16,32 @@
 
 package simpl.db.spec;
 
+import java.util.ArrayList;
+
 import simpl.db.api.Join;
 import simpl.db.api.Query;
 import simpl.db.api.QueryDef;
+import simpl.db.api.TableDef;
 
 /**
  * An internal cache implementation for found {@link Query} annotations.
  */
 public class QuerySpec extends SimplSpec<Query, QueryDef> {
     public Join join = null;
+    public final ArrayList<Class<? extends TableDef>> tables = new ArrayList<>(2);
+
+    /**
+     * The resolved table and join clause or {@code null} if not precompiled.
+     */
+    public String table = null;
+    /**
+     * The deduplicated columns to return or {@code null} if not precompiled.
+     */
+    public String[] columns = null;
+    /**
+     * The complete SELECT statement or {@code null} if not precompiled.
+     */
+    public String sql = null;
 
     /**
      * @param name     as of {@link Class#getSimpleName()}
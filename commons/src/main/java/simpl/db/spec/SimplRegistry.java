@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.spec;
+
+/**
+ * An internal registry of the specs generated for a top-level class and its nested classes.
+ * <p>
+ * The implementation is generated as {@code <TopLevelClass>$$SimplRegistry} for each top-level class
+ * with annotated classes and creates the specs without reflection.
+ * Its name is unique, even if several modules share a package.
+ * </p>
+ */
+public abstract class SimplRegistry {
+    public static final String NAME = "$$SimplRegistry";
+
+    /**
+     * @param simplDef annotated top-level class or one of its nested classes
+     * @return a new spec instance or {@code null} if {@code simplDef} has no generated spec
+     */
+    public abstract SimplSpec<?, ?> newSpec(Class<?> simplDef);
+}
@@ -19,7 +19,10 @@ package simpl.db.spec;
 import java.lang.annotation.Annotation;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
+import simpl.db.api.ColumnType;
+import simpl.db.api.Index;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
 
@@ -27,8 +30,54 @@ import simpl.db.api.TableDef;
  * An internal cache implementation for found {@link Table} annotations.
  */
 public class TableSpec extends SimplSpec<Table, TableDef> {
-    public final HashMap<String, HashSet<? extends Annotation>> columnSpecs = new HashMap<>();
-    public final HashMap<String, Annotation> constraints = new HashMap<>();
+    public static final int FLAG_PRIMARY_KEY = 1;
+    public static final int FLAG_NOT_NULL = 1 << 1;
+    public static final int FLAG_UNIQUE = 1 << 2;
+    public static final int FLAG_DEFAULT = 1 << 3;
+    public static final int FLAG_FOREIGN_KEY = 1 << 4;
+    public static final int FLAG_ADDABLE = 1 << 5;
+
+    /**
+     * The annotations of the columns, empty for generated specs.
+     */
+    public final HashMap<String, HashSet<? extends Annotation>> columnSpecs = new LinkedHashMap<>();
+    /**
+     * The annotations of the table constraints, empty for generated specs.
+     */
+    public final HashMap<String, Annotation> constraints = new LinkedHashMap<>();
+    /**
+     * The annotations of the indexes, empty for generated specs.
+     */
+    public final HashMap<String, Index> indexes = new HashMap<>();
+
+    /**
+     * The CREATE TABLE statement or {@code null} if not precompiled.
+     */
+    public String sql = null;
+    /**
+     * The columns in order of their definition or {@code null} if not precompiled.
+     */
+    public String[] columns = null;
+    /**
+     * The types of {@link #columns} or {@code null} if not precompiled.
+     */
+    public ColumnType[] types = null;
+    /**
+     * The {@code FLAG_*} constraint flags of {@link #columns} or {@code null} if not precompiled.
+     */
+    public int[] flags = null;
+    /**
+     * The column definitions of {@link #columns} or {@code null} if not precompiled.
+     */
+    public String[] definitions = null;
+    /**
+     * The CREATE INDEX statements by name of the index or {@code null} if not precompiled.
+     */
+    public HashMap<String, String> indexSql = null;
+    /**
+     * The fingerprint of the table and its indexes or {@code null} if not precompiled.
+     */
+    public String fingerprint = null;
 
     /**
      * @param name     as of {@link Class#getSimpleName()}
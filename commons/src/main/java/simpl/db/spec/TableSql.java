@@ -0,0 +1,444 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.spec;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import simpl.db.api.Check;
+import simpl.db.api.Collate;
+import simpl.db.api.Column;
+import simpl.db.api.ColumnType;
+import simpl.db.api.ConflictClause;
+import simpl.db.api.Default;
+import simpl.db.api.ForeignKey;
+import simpl.db.api.ForeignKeyAction;
+import simpl.db.api.Index;
+import simpl.db.api.NotNull;
+import simpl.db.api.PrimaryKey;
+import simpl.db.api.Sortorder;
+import simpl.db.api.Table;
+import simpl.db.api.Unique;
+import simpl.db.api.WithoutRowid;
+import simpl.db.internal.SimplName;
+import simpl.db.internal.SimplSql;
+
+/**
+ * Builds the statements defining a table.
+ * Shared by the annotation processor and the runtime to create the same SQL.
+ */
+public class TableSql {
+    /**
+     * Prefix of the names of all indexes created for an {@link Index}.
+     */
+    public static final String INDEX_PREFIX = "_simpl_";
+
+    private final StringBuilder mSql = new StringBuilder();
+    private final ArrayList<String> mColumns = new ArrayList<>();
+    private final ArrayList<ColumnType> mTypes = new ArrayList<>();
+    private final ArrayList<Integer> mFlags = new ArrayList<>();
+    private final ArrayList<String> mDefinitions = new ArrayList<>();
+
+    /**
+     * Builds the statements of the table and its indexes and stores them as precompiled values.
+     *
+     * @param tableSpec to compile
+     * @throws IllegalArgumentException if the table is not defined correctly
+     */
+    public synchronized void compile(TableSpec tableSpec) {
+        String sql = build(tableSpec);
+        HashMap<String, String> indexSql = buildIndexes(tableSpec);
+        String[] statements = indexSql.values().toArray(new String[indexSql.size() + 1]);
+        statements[indexSql.size()] = sql;
+
+        tableSpec.sql = sql;
+        tableSpec.columns = mColumns.toArray(new String[mColumns.size()]);
+        tableSpec.types = mTypes.toArray(new ColumnType[mTypes.size()]);
+        tableSpec.flags = new int[mFlags.size()];
+        for (int i = 0; i < tableSpec.flags.length; i++)
+            tableSpec.flags[i] = mFlags.get(i);
+        tableSpec.definitions = mDefinitions.toArray(new String[mDefinitions.size()]);
+        tableSpec.indexSql = indexSql;
+        tableSpec.fingerprint = SimplSql.fingerprint(statements);
+    }
+
+    private String build(TableSpec tableSpec) {
+        Table table = tableSpec.annotation;
+
+        mSql.setLength(0);
+        mColumns.clear();
+        mTypes.clear();
+        mFlags.clear();
+        mDefinitions.clear();
+
+        mSql.append("CREATE ");
+        if (table.temporary())
+            mSql.append("TEMPORARY ");
+        mSql.append("TABLE ");
+        if (table.ifNotExists())
+            mSql.append("IF NOT EXISTS ");
+        mSql.append(SimplName.from(tableSpec.name)).append(" (");
+
+        boolean separate = false;
+        for (Map.Entry<String, HashSet<? extends Annotation>> e : tableSpec.columnSpecs.entrySet())
+            separate |= addColumn(e.getKey(), e.getValue(), separate ? ", " : "");
+
+        boolean withoutRowId = addConstraints(tableSpec.constraints);
+
+        mSql.append(")");
+        if (withoutRowId)
+            mSql.append(" WITHOUT ROWID");
+
+        return mSql.toString();
+    }
+
+    private static HashMap<String, String> buildIndexes(TableSpec tableSpec) {
+        String table = SimplName.from(tableSpec.name);
+        HashMap<String, String> indexes = new HashMap<>();
+        StringBuilder sql = new StringBuilder();
+        for (Map.Entry<String, Index> e : tableSpec.indexes.entrySet()) {
+            Index index = e.getValue();
+            String name = INDEX_PREFIX + table + '_' + e.getKey();
+
+            sql.setLength(0);
+            sql.append("CREATE ");
+            if (index.unique())
+                sql.append("UNIQUE ");
+            sql.append("INDEX ").append(SimplName.quote(name)).append(" ON ").append(table);
+            handleColumns(sql, index.columns(), Index.class);
+            if (index.where().length() > 0)
+                sql.append(" WHERE ").append(index.where());
+            indexes.put(name, sql.toString());
+        }
+        return indexes;
+    }
+
+    /**
+     * @param foreignKey referencing a table
+     * @return the name of the referenced table
+     */
+    protected String getForeignTable(ForeignKey foreignKey) {
+        return SimplName.from(foreignKey.foreignTable().getSimpleName());
+    }
+
+    private boolean addColumn(String name, HashSet<? extends Annotation> constraints, String delim) {
+        Column column = null;
+        PrimaryKey primaryKey = null;
+        NotNull notNull = null;
+        Unique unique = null;
+        Check check = null;
+        Default defaultValue = null;
+        Collate collate = null;
+        ForeignKey foreignKey = null;
+
+        for (Annotation ann : constraints) {
+            if (ann instanceof Column)
+                column = (Column) ann;
+            else if (ann instanceof PrimaryKey)
+                primaryKey = (PrimaryKey) ann;
+            else if (ann instanceof NotNull)
+                notNull = (NotNull) ann;
+            else if (ann instanceof Unique)
+                unique = (Unique) ann;
+            else if (ann instanceof Check)
+                check = (Check) ann;
+            else if (ann instanceof Default)
+                defaultValue = (Default) ann;
+            else if (ann instanceof Collate)
+                collate = (Collate) ann;
+            else if (ann instanceof ForeignKey)
+                foreignKey = (ForeignKey) ann;
+        }
+
+        mColumns.add(name);
+        mSql.append(delim);
+        int start = mSql.length();
+
+        name = SimplName.quote(name);
+        mSql.append(name).append(' ').append(column.type());
+
+        if (primaryKey != null)
+            handlePrimaryKey(primaryKey);
+        if (notNull != null)
+            handleNotNull(notNull);
+        if (unique != null)
+            handleUnique(unique);
+        if (check != null)
+            handleCheck(check, name);
+        if (defaultValue != null)
+            handleDefault(defaultValue);
+        if (collate != null)
+            handleCollate(collate);
+        if (foreignKey != null)
+            handleForeignKey(foreignKey);
+
+        int flags = 0;
+        if (primaryKey != null)
+            flags |= TableSpec.FLAG_PRIMARY_KEY;
+        if (notNull != null)
+            flags |= TableSpec.FLAG_NOT_NULL;
+        if (unique != null)
+            flags |= TableSpec.FLAG_UNIQUE;
+        if (defaultValue != null)
+            flags |= TableSpec.FLAG_DEFAULT;
+        if (foreignKey != null)
+            flags |= TableSpec.FLAG_FOREIGN_KEY;
+        if (isAddable(primaryKey, notNull, unique, defaultValue, foreignKey))
+            flags |= TableSpec.FLAG_ADDABLE;
+
+        mTypes.add(column.type());
+        mFlags.add(flags);
+        mDefinitions.add(mSql.substring(start));
+        return true;
+    }
+
+    /**
+     * @return if the column could be added with {@code ALTER TABLE ADD COLUMN}
+     */
+    private static boolean isAddable(PrimaryKey primaryKey, NotNull notNull, Unique unique,
+                                     Default defaultValue, ForeignKey foreignKey) {
+        if (primaryKey != null || unique != null)
+            return false;
+        if (defaultValue == null)
+            return notNull == null;
+        if (defaultValue.expression() || foreignKey != null)
+            return false;
+        String value = defaultValue.value().toUpperCase(Locale.US);
+        return !value.startsWith("CURRENT_") && !value.equals("NULL");
+    }
+
+    private boolean addConstraints(HashMap<String, ? extends Annotation> constraints) {
+        boolean withoutRowid = false;
+
+        for (Map.Entry<String, ? extends Annotation> entry : constraints.entrySet()) {
+            mSql.append(", CONSTRAINT ").append(SimplName.quote(entry.getKey()));
+            Annotation ann = entry.getValue();
+            if (ann instanceof PrimaryKey)
+                handlePrimaryKey2((PrimaryKey) ann);
+            else if (ann instanceof Unique)
+                handleUnique2((Unique) ann);
+            else if (ann instanceof Check)
+                handleCheck2((Check) ann);
+            else if (ann instanceof ForeignKey)
+                handleForeignKey2((ForeignKey) ann);
+            else if (ann instanceof WithoutRowid)
+                withoutRowid = true;
+        }
+
+        return withoutRowid;
+    }
+
+    private void handlePrimaryKey(PrimaryKey primaryKey) {
+        mSql.append(" PRIMARY KEY");
+
+        if (primaryKey.sortorder() != Sortorder.DEFAULT)
+            mSql.append(' ').append(primaryKey.sortorder());
+
+        handleConflictClause(primaryKey.conflictClause());
+
+        if (primaryKey.autoincrement())
+            mSql.append(" AUTOINCREMENT");
+    }
+
+    private void handlePrimaryKey2(PrimaryKey primaryKey) {
+        mSql.append(" PRIMARY KEY ");
+        handleColumns(primaryKey.columns(), PrimaryKey.class);
+        handleConflictClause(primaryKey.conflictClause());
+    }
+
+    private void handleUnique(Unique unique) {
+        mSql.append(" UNIQUE");
+        handleConflictClause(unique.conflictClause());
+    }
+
+    private void handleUnique2(Unique unique) {
+        mSql.append(" UNIQUE ");
+        handleColumns(unique.columns(), Unique.class);
+        handleConflictClause(unique.conflictClause());
+    }
+
+    private void handleNotNull(NotNull notNull) {
+        mSql.append(" NOT NULL");
+        handleConflictClause(notNull.conflictClause());
+    }
+
+    private void handleConflictClause(ConflictClause conflictClause) {
+        if (conflictClause != ConflictClause.DEFAULT)
+            mSql.append(" ON CONFLICT ").append(conflictClause);
+    }
+
+    private void handleDefault(Default defaultValue) {
+        if (defaultValue != null) {
+            mSql.append(" DEFAULT ");
+
+            if (defaultValue.expression())
+                mSql.append('(').append(defaultValue.value()).append(')');
+            else
+                mSql.append(defaultValue.value());
+        }
+    }
+
+    private void handleCollate(Collate collation) {
+        mSql.append(" COLLATE ").append(collation.collationName());
+    }
+
+    private void handleCheck(String expression) {
+        mSql.append(" CHECK (").append(expression).append(')');
+    }
+
+    private void handleCheck(Check check, String name) {
+        handleCheck(String.format(Locale.US, check.expression(), name));
+    }
+
+    private void handleCheck2(Check check) {
+        handleCheck(check.expression());
+    }
+
+    private void handleForeignKey(ForeignKey foreignKey) {
+        mSql.append(" REFERENCES ").append(getForeignTable(foreignKey));
+        handleColumns(foreignKey.foreignColumns(), null);
+        if (foreignKey.onDelete() != ForeignKeyAction.DEFAULT)
+            mSql.append(" ON DELETE ").append(foreignKey.onDelete().toString().replace('_', ' '));
+        if (foreignKey.onUpdate() != ForeignKeyAction.DEFAULT)
+            mSql.append(" ON UPDATE ").append(foreignKey.onUpdate().toString().replace('_', ' '));
+        if (foreignKey.deferrable())
+            mSql.append(" DEFERRABLE INITIALLY DEFERRED");
+    }
+
+    private void handleForeignKey2(ForeignKey foreignKey) {
+        mSql.append(" FOREIGN KEY");
+        handleColumns(foreignKey.columns(), ForeignKey.class);
+        handleForeignKey(foreignKey);
+    }
+
+    private void handleColumns(String[] columns, Class<? extends Annotation> ann) {
+        handleColumns(mSql, columns, ann);
+    }
+
+    private static void handleColumns(StringBuilder sql, String[] columns, Class<? extends Annotation> ann) {
+        if (columns.length != 0) {
+            sql.append(" (").append(columns[0]);
+            for (int i = 1; i < columns.length; i++)
+                sql.append(", ").append(columns[i]);
+            sql.append(')');
+        } else if (ann != null) {
+            throw new IllegalArgumentException("Annotation " + ann.getSimpleName()
+                    + " must define a positive number of columns.");
+        }
+    }
+
+    /**
+     * @param tableSpec compiled
+     * @return the statement creating the table prefixed with {@code _}
+     */
+    public static String getTemporarySql(TableSpec tableSpec) {
+        String name = ' ' + SimplName.from(tableSpec.name) + " (";
+        int i = tableSpec.sql.indexOf(name) + 1;
+        return tableSpec.sql.substring(0, i) + '_' + tableSpec.sql.substring(i);
+    }
+
+    /**
+     * Compares a compiled table with an existing table.
+     *
+     * @param tableSpec compiled
+     * @param sql       of the existing table as stored in {@code sqlite_master}
+     * @return the column definitions to add or {@code null} if the table must be rebuilt
+     */
+    public static List<String> getAddedColumns(TableSpec tableSpec, String sql) {
+        Definitions current = Definitions.parse(tableSpec.sql);
+        Definitions existing = Definitions.parse(sql);
+        if (current == null || existing == null || !current.options.equals(existing.options)
+                || !current.constraints.equals(existing.constraints)
+                || !current.columns.containsAll(existing.columns))
+            return null;
+
+        ArrayList<String> columns = new ArrayList<>();
+        for (int i = 0; i < tableSpec.definitions.length; i++) {
+            String definition = tableSpec.definitions[i];
+            if (existing.columns.contains(definition))
+                continue;
+            if ((tableSpec.flags[i] & TableSpec.FLAG_ADDABLE) == 0)
+                return null;
+            columns.add(definition);
+        }
+        return columns;
+    }
+
+    /**
+     * The column definitions, table constraints and table options of a {@code CREATE TABLE} statement.
+     */
+    public static final class Definitions {
+        public final HashSet<String> columns = new HashSet<>();
+        public final HashSet<String> constraints = new HashSet<>();
+        public final String options;
+
+        private Definitions(String options) {
+            this.options = options;
+        }
+
+        public boolean isWithoutRowid() {
+            return options.toUpperCase(Locale.US).contains("WITHOUT ROWID");
+        }
+
+        /**
+         * @param sql of the {@code CREATE TABLE} statement
+         * @return the definitions or {@code null} if {@code sql} cannot be parsed
+         */
+        public static Definitions parse(String sql) {
+            int start = sql != null ? sql.indexOf('(') : -1;
+            if (start < 0)
+                return null;
+
+            ArrayList<String> definitions = new ArrayList<>();
+            int depth = 0;
+            char quote = 0;
+            for (int i = start + 1; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (quote != 0) {
+                    if (c == quote)
+                        quote = 0;
+                } else if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                } else if (c == '[') {
+                    quote = ']';
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && depth > 0) {
+                    depth--;
+                } else if (depth == 0 && (c == ',' || c == ')')) {
+                    definitions.add(sql.substring(start + 1, i).trim());
+                    start = i;
+                    if (c == ')') {
+                        Definitions defs = new Definitions(sql.substring(i + 1).trim());
+                        for (String definition : definitions)
+                            if (definition.regionMatches(true, 0, "CONSTRAINT ", 0, 11))
+                                defs.constraints.add(definition);
+                            else if (definition.length() > 0)
+                                defs.columns.add(definition);
+                        return defs;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -16,24 +16,44 @@
 
 package simpl.db.compiler;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeMirror;
+import javax.tools.StandardLocation;
 
 import simpl.db.api.Database;
 import simpl.db.api.Table;
+import simpl.db.internal.SimplName;
 import simpl.db.spec.DatabaseSpec;
+import simpl.db.spec.DatabaseSql;
 import simpl.db.spec.TableSpec;
 
 class DatabaseSpecWriter extends SimplSpecWriter {
     private static final String SIMPL_DB = "simpl.db.SimplDb";
 
-    DatabaseSpecWriter(ProcessingEnvironment processingEnv) {
+    private final TableSpecWriter tableSpecWriter;
+    private final ArrayList<TableSpec> tableSpecs = new ArrayList<>();
+
+    DatabaseSpecWriter(ProcessingEnvironment processingEnv, TableSpecWriter tableSpecWriter) {
         super(processingEnv, SIMPL_DB, Database.class, DatabaseSpec.class);
+        this.tableSpecWriter = tableSpecWriter;
+    }
+
+    @Override
+    String process(TypeElement type) throws IOException {
+        tableSpecs.clear();
+        String spec = super.process(type);
+        if (spec != null && !tableSpecs.contains(null))
+            writeScript(type);
+        return spec;
     }
 
     @Override
@@ -42,11 +62,35 @@ class DatabaseSpecWriter extends SimplSpecWriter {
         AnnotationValue tables = getAnnotationValue(annotation, "tables");
         for (AnnotationValue table : (List<? extends AnnotationValue>) tables.getValue()) {
             TypeMirror value = (TypeMirror) table.getValue();
+            TypeElement tableDef = (TypeElement) types.asElement(value);
             writer.print(indent);
             writer.print("tableSpecs.add(new ");
-            writer.print(value + "$$" + TableSpec.class.getSimpleName());
+            writer.print(getSpecName(tableDef, TableSpec.class));
             writer.println("());");
-            verify(value, Table.class);
+            if (!isAccessible(tableDef)) {
+                error(value + " must not be private", type, annotation);
+                tableSpecs.add(null);
+            } else if (verify(value, Table.class))
+                tableSpecs.add(tableSpecWriter.getTableSpec(tableDef));
+            else
+                tableSpecs.add(null);
+        }
+    }
+
+    /**
+     * Writes the schema script of the database as resource next to its class.
+     */
+    private void writeScript(TypeElement type) throws IOException {
+        PackageElement pkg = elements.getPackageOf(type);
+        String name = SimplName.from(type.getSimpleName().toString()) + DatabaseSql.SCRIPT_EXTENSION;
+        int version = type.getAnnotation(Database.class).version();
+
+        Writer script = filer.createResource(StandardLocation.CLASS_OUTPUT,
+                pkg.isUnnamed() ? "" : pkg.getQualifiedName(), name, type).openWriter();
+        try {
+            script.write(DatabaseSql.getScript(version, tableSpecs));
+        } finally {
+            script.close();
         }
     }
 }
@@ -16,13 +16,24 @@
 
 package simpl.db.compiler;
 
+import java.util.IllegalFormatException;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
 
 import simpl.db.api.Join;
+import simpl.db.api.JoinType;
 import simpl.db.api.Query;
 import simpl.db.api.QueryDef;
+import simpl.db.api.Table;
+import simpl.db.internal.SimplName;
+import simpl.db.internal.SimplSql;
 import simpl.db.spec.QuerySpec;
 
 class QuerySpecWriter extends SimplSpecWriter {
@@ -32,15 +43,102 @@ class QuerySpecWriter extends SimplSpecWriter {
 
     @Override
     void writeSpecs(TypeElement type, AnnotationMirror annotation, String indent) {
-        annotation = getAnnotation(type, Join.class);
-        if (annotation != null) {
+        AnnotationMirror join = getAnnotation(type, Join.class);
+        if (join != null) {
             writer.print(indent);
             writer.print("join = new ");
-            writer.print(annotation.getAnnotationType());
+            writer.print(join.getAnnotationType());
             writer.println("() {");
-            writeAnnotation(annotation, indent + TAB);
+            writeAnnotation(join, indent + TAB);
             writer.print(indent);
             writer.println("};");
         }
+
+        writeQuery(type, annotation, join, indent);
+    }
+
+    private void writeQuery(TypeElement type, AnnotationMirror query, AnnotationMirror join, String indent) {
+        TypeMirror tableDef = (TypeMirror) getAnnotationValueWithDefaults(query, "table").getValue();
+        if (!verify(tableDef, Table.class))
+            return;
+        writeTable(tableDef, indent);
+
+        String table = getName(tableDef);
+        LinkedHashSet<String> columns = new LinkedHashSet<>();
+        addColumns(columns, query);
+
+        if (join != null) {
+            TypeMirror joinDef = (TypeMirror) getAnnotationValueWithDefaults(join, "table").getValue();
+            if (!verify(joinDef, Table.class))
+                return;
+            writeTable(joinDef, indent);
+
+            String joinType = ((VariableElement) getAnnotationValueWithDefaults(join, "type").getValue())
+                    .getSimpleName().toString();
+            boolean natural = (Boolean) getAnnotationValueWithDefaults(join, "natural").getValue();
+            String on = (String) getAnnotationValueWithDefaults(join, "on").getValue();
+            try {
+                table = SimplSql.join(table, getName(joinDef), JoinType.DEFAULT.name().equals(joinType) ? null : joinType, natural, on);
+            } catch (IllegalFormatException e) {
+                error("invalid join constraint " + on, type, join);
+                return;
+            }
+            addColumns(columns, join);
+        }
+
+        String[] columnNames = columns.toArray(new String[columns.size()]);
+        int limit = (Integer) getAnnotationValueWithDefaults(query, "limit").getValue();
+        String sql;
+        try {
+            sql = SimplSql.select(table, columnNames,
+                    getNullString(query, "selection"), getNullString(query, "groupBy"),
+                    getNullString(query, "having"), getNullString(query, "orderBy"),
+                    limit > 0 ? Integer.toString(limit) : null);
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage(), type, query);
+            return;
+        }
+
+        writer.print(indent);
+        writer.print("table = ");
+        writer.print(elements.getConstantExpression(table));
+        writer.println(";");
+
+        writer.print(indent);
+        writer.print("columns = new String[]{");
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0)
+                writer.print(", ");
+            writer.print(elements.getConstantExpression(columnNames[i]));
+        }
+        writer.println("};");
+
+        writer.print(indent);
+        writer.print("sql = ");
+        writer.print(elements.getConstantExpression(sql));
+        writer.println(";");
+    }
+
+    private void writeTable(TypeMirror tableDef, String indent) {
+        writer.print(indent);
+        writer.print("tables.add(");
+        writer.print(types.erasure(tableDef));
+        writer.println(".class);");
+    }
+
+    private String getName(TypeMirror tableDef) {
+        return SimplName.from(types.asElement(tableDef).getSimpleName().toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addColumns(LinkedHashSet<String> columns, AnnotationMirror annotation) {
+        AnnotationValue values = getAnnotationValueWithDefaults(annotation, "columns");
+        for (AnnotationValue column : (List<? extends AnnotationValue>) values.getValue())
+            columns.add((String) column.getValue());
+    }
+
+    private String getNullString(AnnotationMirror annotation, String key) {
+        String value = (String) getAnnotationValueWithDefaults(annotation, key).getValue();
+        return value.length() > 0 ? value : null;
     }
 }
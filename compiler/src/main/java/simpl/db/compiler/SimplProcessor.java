@@ -39,7 +39,8 @@ public final class SimplProcessor extends AbstractProcessor {
 
     private SimplSpecWriter databaseSpecWriter;
     private SimplSpecWriter querySpecWriter;
-    private SimplSpecWriter tableSpecWriter;
+    private TableSpecWriter tableSpecWriter;
+    private SimplRegistryWriter registryWriter;
 
     @Override
     public SourceVersion getSupportedSourceVersion() {
@@ -58,19 +59,29 @@ public final class SimplProcessor extends AbstractProcessor {
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
-        databaseSpecWriter = new DatabaseSpecWriter(processingEnv);
-        querySpecWriter = new QuerySpecWriter(processingEnv);
         tableSpecWriter = new TableSpecWriter(processingEnv);
+        databaseSpecWriter = new DatabaseSpecWriter(processingEnv, tableSpecWriter);
+        querySpecWriter = new QuerySpecWriter(processingEnv);
+        registryWriter = new SimplRegistryWriter(processingEnv);
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        boolean added = false;
         for (TypeElement annotation : annotations)
-            process(annotation, roundEnv);
+            added |= process(annotation, roundEnv);
+        // the registry is written in the first round without new specs,
+        // so it is still compiled and never created in the last round
+        if (!added && !roundEnv.processingOver())
+            try {
+                registryWriter.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
         return true;
     }
 
-    private void process(TypeElement annotation, RoundEnvironment roundEnv) {
+    private boolean process(TypeElement annotation, RoundEnvironment roundEnv) {
         SimplSpecWriter writer;
         Class<? extends Annotation> ann;
 
@@ -82,13 +93,19 @@ public final class SimplProcessor extends AbstractProcessor {
         else if (TABLE.equals(name))
             writer = tableSpecWriter;
         else
-            return;
+            return false;
 
+        boolean added = false;
         for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
             try {
-                writer.process((TypeElement) element);
+                String spec = writer.process((TypeElement) element);
+                if (spec != null) {
+                    registryWriter.add((TypeElement) element, spec);
+                    added = true;
+                }
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
+        return added;
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.compiler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+import simpl.db.spec.SimplRegistry;
+import simpl.db.spec.SimplSpec;
+
+import static simpl.db.compiler.SimplSpecWriter.TAB;
+
+final class SimplRegistryWriter {
+    private final Elements elements;
+    private final Filer filer;
+
+    private final LinkedHashMap<TypeElement, LinkedHashMap<TypeElement, String>> registries = new LinkedHashMap<>();
+
+    SimplRegistryWriter(ProcessingEnvironment e) {
+        elements = e.getElementUtils();
+        filer = e.getFiler();
+    }
+
+    void add(TypeElement type, String spec) {
+        TypeElement topLevel = type;
+        while (topLevel.getNestingKind() != NestingKind.TOP_LEVEL)
+            topLevel = (TypeElement) topLevel.getEnclosingElement();
+
+        LinkedHashMap<TypeElement, String> specs = registries.get(topLevel);
+        if (specs == null)
+            registries.put(topLevel, specs = new LinkedHashMap<>());
+        specs.put(type, spec);
+    }
+
+    void write() throws IOException {
+        for (Map.Entry<TypeElement, LinkedHashMap<TypeElement, String>> entry : registries.entrySet())
+            write(entry.getKey(), entry.getValue());
+        registries.clear();
+    }
+
+    private void write(TypeElement topLevel, LinkedHashMap<TypeElement, String> specs) throws IOException {
+        PackageElement pkg = elements.getPackageOf(topLevel);
+        String name = topLevel.getSimpleName() + SimplRegistry.NAME;
+        ArrayList<Element> types = new ArrayList<Element>(specs.keySet());
+        PrintWriter writer = new PrintWriter(filer.createSourceFile(elements.getBinaryName(topLevel) + SimplRegistry.NAME,
+                types.toArray(new Element[types.size()])).openWriter());
+
+        if (!pkg.isUnnamed()) {
+            writer.print("package ");
+            writer.print(pkg);
+            writer.println(";");
+            writer.println();
+        }
+
+        writer.print("public final class ");
+        writer.print(name);
+        writer.print(" extends ");
+        writer.print(SimplRegistry.class.getName());
+        writer.println(" {");
+
+        writer.print(TAB);
+        writer.println("@Override");
+        writer.print(TAB);
+        writer.print("public ");
+        writer.print(SimplSpec.class.getName());
+        writer.println("<?, ?> newSpec(Class<?> simplDef) {");
+
+        for (Map.Entry<TypeElement, String> spec : specs.entrySet()) {
+            writer.print(TAB);
+            writer.print(TAB);
+            writer.print("if (simplDef == ");
+            writer.print(spec.getKey().getQualifiedName());
+            writer.println(".class)");
+            writer.print(TAB);
+            writer.print(TAB);
+            writer.print(TAB);
+            writer.print("return new ");
+            writer.print(spec.getValue());
+            writer.println("();");
+        }
+
+        writer.print(TAB);
+        writer.print(TAB);
+        writer.println("return null;");
+        writer.print(TAB);
+        writer.println("}");
+        writer.println("}");
+        writer.println();
+        writer.close();
+    }
+}
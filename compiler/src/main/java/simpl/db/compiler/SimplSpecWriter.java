@@ -28,6 +28,7 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.TypeKind;
@@ -44,7 +45,7 @@ abstract class SimplSpecWriter {
     final Elements elements;
     final Types types;
 
-    private final Filer filer;
+    final Filer filer;
     PrintWriter writer;
 
     final TypeElement simplDef;
@@ -82,22 +83,43 @@ abstract class SimplSpecWriter {
         return false;
     }
 
-    void process(TypeElement type) throws IOException {
+    /**
+     * Private classes are not processed, since their specs could not access them.
+     *
+     * @return the name of the written spec or {@code null} if {@code type} is not valid
+     */
+    String process(TypeElement type) throws IOException {
         AnnotationMirror annotation = getAnnotation(type, ann);
-        if (!verify(type, simplDef, annotation))
-            return;
+        if (!verify(type, simplDef, annotation) || !isAccessible(type))
+            return null;
 
-        String spec = "$$" + simplSpec.getSimpleName();
+        String spec = getSpecName(type, simplSpec);
         String name = type.getSimpleName().toString();
-        JavaFileObject file = filer.createSourceFile(type + spec, type);
+        JavaFileObject file = filer.createSourceFile(spec, type);
         writer = new PrintWriter(file.openWriter());
 
+        String cls = spec.substring(spec.lastIndexOf('.') + 1);
         writePackage(type);
-        writeDefineClass(name + spec, simplSpec);
-        writeSpec(name + spec, name, annotation, type);
+        writeDefineClass(cls, simplSpec);
+        writeSpec(cls, name, annotation, type);
         writeCloseClass();
         writer.println();
         writer.close();
+        return spec;
+    }
+
+    /**
+     * @return the binary name of the spec of {@code type}, which is a top-level class even for nested types
+     */
+    String getSpecName(TypeElement type, Class<?> simplSpec) {
+        return elements.getBinaryName(type) + "$$" + simplSpec.getSimpleName();
+    }
+
+    static boolean isAccessible(Element element) {
+        for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement())
+            if (e.getModifiers().contains(Modifier.PRIVATE))
+                return false;
+        return true;
     }
 
     private void writePackage(TypeElement type) {
@@ -216,4 +238,12 @@ abstract class SimplSpecWriter {
                 return entry.getValue();
         throw new IllegalArgumentException(annotation + " has no key " + key);
     }
+
+    AnnotationValue getAnnotationValueWithDefaults(AnnotationMirror annotation, String key) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                elements.getElementValuesWithDefaults(annotation).entrySet())
+            if (key.equals(entry.getKey().getSimpleName().toString()))
+                return entry.getValue();
+        throw new IllegalArgumentException(annotation + " has no key " + key);
+    }
 }
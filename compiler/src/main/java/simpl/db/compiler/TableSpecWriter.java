@@ -17,7 +17,12 @@
 package simpl.db.compiler;
 
 import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
@@ -25,98 +30,181 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 
+import simpl.db.api.Check;
+import simpl.db.api.Collate;
 import simpl.db.api.Column;
+import simpl.db.api.ColumnType;
 import simpl.db.api.Constraint;
+import simpl.db.api.Default;
+import simpl.db.api.ForeignKey;
+import simpl.db.api.Index;
+import simpl.db.api.NotNull;
+import simpl.db.api.PrimaryKey;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
+import simpl.db.api.Unique;
+import simpl.db.api.WithoutRowid;
 import simpl.db.internal.SimplName;
 import simpl.db.spec.TableSpec;
+import simpl.db.spec.TableSql;
 
 class TableSpecWriter extends SimplSpecWriter {
+    private static final List<Class<? extends Annotation>> TABLE_CONSTRAINTS = Arrays.<Class<? extends Annotation>>asList(
+            PrimaryKey.class, Unique.class, Check.class, ForeignKey.class, WithoutRowid.class);
+    private static final List<Class<? extends Annotation>> FIELD_CONSTRAINTS = Arrays.<Class<? extends Annotation>>asList(
+            PrimaryKey.class, Unique.class, Check.class, ForeignKey.class);
+    private static final List<Class<? extends Annotation>> COLUMN_CONSTRAINTS = Arrays.<Class<? extends Annotation>>asList(
+            Column.class, PrimaryKey.class, NotNull.class, Unique.class,
+            Check.class, Default.class, Collate.class, ForeignKey.class);
+
+    private final HashMap<String, TableSpec> tableSpecs = new HashMap<>();
+
     TableSpecWriter(ProcessingEnvironment processingEnv) {
         super(processingEnv, TableDef.class.getName(), Table.class, TableSpec.class);
     }
 
     @Override
     void writeSpecs(TypeElement type, AnnotationMirror annotation, String indent) {
-        writeConstraints(type, annotation, indent);
+        TableSpec tableSpec = getTableSpec(type);
+        if (tableSpec != null)
+            writeSql(tableSpec, indent);
+    }
+
+    /**
+     * Compiles the table defined by {@code type} once and reports any error.
+     *
+     * @return the compiled spec or {@code null} if the table is not valid
+     */
+    TableSpec getTableSpec(TypeElement type) {
+        String name = type.getQualifiedName().toString();
+        if (tableSpecs.containsKey(name))
+            return tableSpecs.get(name);
+
         Fields fields = new Fields();
         collectFields(type, fields);
-        writeConstraints2(fields, indent);
-        writeColumnSpecs(fields, indent);
+        verifyColumnNames(fields);
+        TableSpec tableSpec = compile(type, fields);
+        tableSpecs.put(name, tableSpec);
+        return tableSpec;
     }
 
-    private void writeConstraint(String value, AnnotationMirror annotation, String indent) {
-        String name = annotation.getAnnotationType().asElement().getSimpleName().toString();
-        if (value != null)
-            name += '_' + value;
-        name = SimplName.from(name);
+    private void verifyColumnNames(Fields fields) {
+        HashSet<String> columnNames = new HashSet<>();
+        for (VariableElement field : fields.columns) {
+            String name = SimplName.from(field.getSimpleName().toString());
+            if (!columnNames.add(name))
+                error(field + " provides a duplicated column " + name, field, null);
+        }
+    }
 
-        writer.print(indent);
-        writer.print("constraints.put(\"");
-        writer.print(name);
-        writer.print("\", new ");
-        writer.print(annotation.getAnnotationType());
-        writer.println("() {");
-        writeAnnotation(annotation, indent + TAB);
-        writer.print(indent);
-        writer.println("});");
+    private TableSpec compile(TypeElement type, Fields fields) {
+        TableSpec tableSpec = new TableSpec(type.getSimpleName().toString(), type.getAnnotation(Table.class), null);
+        addAnnotations(tableSpec.constraints, null, type, TABLE_CONSTRAINTS);
+        for (VariableElement field : fields.constraints)
+            addAnnotations(tableSpec.constraints, field.getSimpleName().toString(), field, FIELD_CONSTRAINTS);
+        for (VariableElement field : fields.columns) {
+            HashMap<String, Annotation> annotations = new HashMap<>();
+            addAnnotations(annotations, null, field, COLUMN_CONSTRAINTS);
+            tableSpec.columnSpecs.put(SimplName.from(field.getSimpleName().toString()),
+                    new HashSet<>(annotations.values()));
+        }
+        for (VariableElement field : fields.indexes)
+            tableSpec.indexes.put(SimplName.from(field.getSimpleName().toString()), field.getAnnotation(Index.class));
+
+        try {
+            new ElementTableSql().compile(tableSpec);
+            return tableSpec;
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage(), type, getAnnotation(type, Table.class));
+            return null;
+        }
     }
 
-    private void writeConstraints(TypeElement type, AnnotationMirror table, String indent) {
-        for (AnnotationMirror annotation : type.getAnnotationMirrors())
-            if (!table.equals(annotation))
-                writeConstraint(null, annotation, indent);
+    private void writeSql(TableSpec tableSpec, String indent) {
+        writeString("sql", tableSpec.sql, indent);
+        writeStrings("columns", tableSpec.columns, indent);
+        writeTypes(tableSpec.types, indent);
+        writeInts("flags", tableSpec.flags, indent);
+        writeStrings("definitions", tableSpec.definitions, indent);
+
+        writer.print(indent);
+        writer.print("indexSql = new ");
+        writer.print(HashMap.class.getName());
+        writer.println("<>();");
+        for (Map.Entry<String, String> index : tableSpec.indexSql.entrySet()) {
+            writer.print(indent);
+            writer.print("indexSql.put(");
+            writer.print(elements.getConstantExpression(index.getKey()));
+            writer.print(", ");
+            writer.print(elements.getConstantExpression(index.getValue()));
+            writer.println(");");
+        }
+
+        writeString("fingerprint", tableSpec.fingerprint, indent);
     }
 
-    private void writeConstraints2(Fields fields, String indent) {
-        for (VariableElement field : fields.constraints)
-            for (AnnotationMirror annotation : field.getAnnotationMirrors())
-                if (!isAnnotationType(annotation, Column.class, Constraint.class))
-                    writeConstraint(field.getSimpleName().toString(), annotation, indent);
+    private static void addAnnotations(Map<String, Annotation> annotations, String value, Element element,
+                                       List<Class<? extends Annotation>> anns) {
+        for (Class<? extends Annotation> ann : anns) {
+            Annotation annotation = element.getAnnotation(ann);
+            if (annotation != null) {
+                String name = ann.getSimpleName();
+                if (value != null)
+                    name += '_' + value;
+                annotations.put(SimplName.from(name), annotation);
+            }
+        }
     }
 
-    @SafeVarargs
-    private static boolean isAnnotationType(AnnotationMirror annotation, Class<? extends Annotation>... anns) {
-        for (Class<? extends Annotation> ann : anns)
-            if (ann.getName().equals(annotation.getAnnotationType().toString()))
-                return true;
-        return false;
+    private void writeString(String field, String value, String indent) {
+        writer.print(indent);
+        writer.print(field);
+        writer.print(" = ");
+        writer.print(elements.getConstantExpression(value));
+        writer.println(";");
     }
 
-    private void writeColumnSpecs(Fields fields, String indent) {
+    private void writeStrings(String field, String[] values, String indent) {
         writer.print(indent);
-        writer.print(HashSet.class.getName());
-        writer.print("<");
-        writer.print(Annotation.class.getName());
-        writer.println("> annotations;");
+        writer.print(field);
+        writer.print(" = new String[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                writer.print(", ");
+            writer.print(elements.getConstantExpression(values[i]));
+        }
+        writer.println("};");
+    }
 
-        HashSet<String> columnNames = new HashSet<>();
-        for (VariableElement field : fields.columns) {
-            String name = SimplName.from(field.getSimpleName().toString());
-            if (!columnNames.add(name))
-                error(field + " provides a duplicated column " + name, field, null);
+    private void writeTypes(ColumnType[] values, String indent) {
+        writer.print(indent);
+        writer.print("types = new ");
+        writer.print(ColumnType.class.getName());
+        writer.print("[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                writer.print(", ");
+            writer.print(ColumnType.class.getName());
+            writer.print(".");
+            writer.print(values[i].name());
+        }
+        writer.println("};");
+    }
 
-            writer.print(indent);
-            writer.print("columnSpecs.put(\"");
-            writer.print(name);
-            writer.print("\", annotations = new ");
-            writer.print(HashSet.class.getName());
-            writer.println("<>());");
-
-            for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
-                writer.print(indent);
-                writer.print("annotations.add(new ");
-                writer.print(annotation.getAnnotationType());
-                writer.println("() {");
-                writeAnnotation(annotation, indent + TAB);
-                writer.print(indent);
-                writer.println("});");
-            }
+    private void writeInts(String field, int[] values, String indent) {
+        writer.print(indent);
+        writer.print(field);
+        writer.print(" = new int[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                writer.print(", ");
+            writer.print(values[i]);
         }
+        writer.println("};");
     }
 
     private boolean verifyColumn(VariableElement field) {
@@ -141,6 +229,17 @@ class TableSpecWriter extends SimplSpecWriter {
         return false;
     }
 
+    private boolean verifyIndex(VariableElement field) {
+        AnnotationMirror index = getAnnotation(field, Index.class);
+        if (index == null)
+            return false;
+        String name = SimplName.from(field.getSimpleName().toString());
+        if (name.equals(field.getConstantValue().toString()))
+            return true;
+        error(field + " must have a constant value of \"" + name + "\"", field, index);
+        return false;
+    }
+
     @SuppressWarnings("Convert2streamapi")
     private void collectFields(TypeElement type, Fields fields) {
         TypeMirror s = type.getSuperclass();
@@ -154,14 +253,34 @@ class TableSpecWriter extends SimplSpecWriter {
                     fields.columns.add((VariableElement) e);
                 if (verifyConstraint((VariableElement) e))
                     fields.constraints.add((VariableElement) e);
+                if (verifyIndex((VariableElement) e))
+                    fields.indexes.add((VariableElement) e);
             }
     }
 
     private static class Fields {
-        final HashSet<VariableElement> constraints = new HashSet<>();
-        final HashSet<VariableElement> columns = new HashSet<>();
+        final LinkedHashSet<VariableElement> constraints = new LinkedHashSet<>();
+        final LinkedHashSet<VariableElement> columns = new LinkedHashSet<>();
+        final LinkedHashSet<VariableElement> indexes = new LinkedHashSet<>();
 
         Fields() {
         }
     }
+
+    /**
+     * Resolves the referenced tables from their type mirrors.
+     */
+    private class ElementTableSql extends TableSql {
+        ElementTableSql() {
+        }
+
+        @Override
+        protected String getForeignTable(ForeignKey foreignKey) {
+            try {
+                return super.getForeignTable(foreignKey);
+            } catch (MirroredTypeException e) {
+                return SimplName.from(types.asElement(e.getTypeMirror()).getSimpleName().toString());
+            }
+        }
+    }
 }
@@ -18,27 +18,30 @@ package simpl.db.compiler;
 
 import org.junit.Test;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Scanner;
 
-import simpl.db.api.Column;
-import simpl.db.api.Constraint;
+import simpl.db.api.ColumnType;
 import simpl.db.api.Database;
 import simpl.db.api.Join;
 import simpl.db.api.Query;
+import simpl.db.api.SimplDef;
 import simpl.db.api.Table;
 import simpl.db.db.TestDatabase;
 import simpl.db.db.TestQuery;
 import simpl.db.db.TestTable;
 import simpl.db.spec.DatabaseSpec;
+import simpl.db.spec.DatabaseSql;
 import simpl.db.spec.QuerySpec;
+import simpl.db.spec.SimplRegistry;
 import simpl.db.spec.TableSpec;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
-import static simpl.db.internal.SimplName.from;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class SimplProcessorTest {
 
@@ -77,10 +80,15 @@ public class SimplProcessorTest {
         assertEquals(queryAnn, spec.annotation);
         assertEquals(joinAnn, spec.join);
         assertEquals(queryDef.getSimpleName(), spec.name);
+
+        final String table = "test_table JOIN test_table ON (key1=key2)";
+        assertEquals(Arrays.asList(TestTable.class, TestTable.class), spec.tables);
+        assertEquals(table, spec.table);
+        assertArrayEquals(new String[]{TestTable.KEY1, TestTable.KEY2}, spec.columns);
+        assertEquals("SELECT key1, key2 FROM " + table + " LIMIT 2", spec.sql);
     }
 
     @Test
-    @SuppressWarnings("unchecked")
     public void tableSpec() throws Exception {
         Class<TestTable> tableDef = TestTable.class;
         Table tableAnn = tableDef.getAnnotation(Table.class);
@@ -91,39 +99,60 @@ public class SimplProcessorTest {
         assertEquals(tableAnn, spec.annotation);
         assertEquals(tableDef.getSimpleName(), spec.name);
 
-        HashMap<String, HashSet<? extends Annotation>> columnSpecs = spec.columnSpecs;
-        assertEquals(3, columnSpecs.size());
-
-        HashMap<String, Annotation> uncheckedConstraints = new HashMap<>();
-        for (Map.Entry<String, Annotation> entry : spec.constraints.entrySet()) {
-            String name = entry.getKey();
-            Annotation constraint = entry.getValue();
-            Class<?> ann = constraint.getClass().getInterfaces()[0];
-            Annotation expected = tableDef.getAnnotation((Class<? extends Annotation>) ann);
-            if (expected != null)
-                assertEquals(expected, constraint);
-            else
-                uncheckedConstraints.put(name, constraint);
-        }
+        assertEquals(0, spec.columnSpecs.size());
+        assertEquals(0, spec.constraints.size());
+        assertEquals(0, spec.indexes.size());
+
+        assertArrayEquals(new String[]{TestTable.KEY1, TestTable.KEY2, TestTable.KEY3}, spec.columns);
+        assertEquals("CREATE TABLE test_table (\"key1\" TEXT, \"key2\" TEXT UNIQUE, \"key3\" INTEGER DEFAULT 4, "
+                        + "CONSTRAINT \"check\" CHECK (), CONSTRAINT \"without_rowid\", "
+                        + "CONSTRAINT \"unique_const1\" UNIQUE  (key1, key2)) WITHOUT ROWID", spec.sql);
+        assertArrayEquals(new ColumnType[]{ColumnType.TEXT, ColumnType.TEXT, ColumnType.INTEGER}, spec.types);
+        assertArrayEquals(new int[]{TableSpec.FLAG_ADDABLE, TableSpec.FLAG_UNIQUE,
+                TableSpec.FLAG_DEFAULT | TableSpec.FLAG_ADDABLE}, spec.flags);
+        assertArrayEquals(new String[]{"\"key1\" TEXT", "\"key2\" TEXT UNIQUE", "\"key3\" INTEGER DEFAULT 4"},
+                spec.definitions);
+        assertEquals("CREATE INDEX \"_simpl_test_table_index1\" ON test_table (key3, key1) WHERE key3>0",
+                spec.indexSql.get("_simpl_test_table_index1"));
+        assertEquals(40, spec.fingerprint.length());
+    }
 
-        for (Field field : tableDef.getFields()) {
-            String fieldValue = field.get(null).toString();
-
-            if (field.getAnnotation(Constraint.class) != null)
-                for (Annotation expected : field.getAnnotations()) {
-                    String name = from(expected.annotationType().getSimpleName() + '_' + fieldValue);
-                    Annotation constraint = uncheckedConstraints.remove(name);
-                    if (constraint != null)
-                        assertEquals(expected, constraint);
-                }
-
-            if (field.getAnnotation(Column.class) != null)
-                for (Annotation columnSpec : columnSpecs.get(field.get(null).toString())) {
-                    Class<?> ann = columnSpec.getClass().getInterfaces()[0];
-                    assertEquals(field.getAnnotation((Class<? extends Annotation>) ann), columnSpec);
-                }
-        }
+    @Test
+    public void registry() throws Exception {
+        assertTrue(newRegistry(TestDatabase.class).newSpec(TestDatabase.class) instanceof DatabaseSpec);
+        assertTrue(newRegistry(TestQuery.class).newSpec(TestQuery.class) instanceof QuerySpec);
+        assertTrue(newRegistry(TestTable.class).newSpec(TestTable.class) instanceof TableSpec);
+        assertEquals(TestTable.class, newRegistry(TestTable.class).newSpec(TestTable.class).simplDef);
+        assertNull(newRegistry(TestTable.class).newSpec(TestQuery.class));
+        assertNull(newRegistry(TestDatabase.class).newSpec(SimplDef.class));
+    }
+
+    @Test
+    public void nestedRegistry() throws Exception {
+        QuerySpec spec = (QuerySpec) newRegistry(TestQuery.class).newSpec(TestQuery.Nested.class);
 
-        assertEquals(0, uncheckedConstraints.size());
+        assertEquals(TestQuery.Nested.class, spec.simplDef);
+        assertEquals(TestQuery.Nested.class.getName() + "$$" + QuerySpec.class.getSimpleName(),
+                spec.getClass().getName());
+        assertArrayEquals(new String[]{TestTable.KEY1}, spec.columns);
+    }
+
+    private static SimplRegistry newRegistry(Class<?> topLevel) throws Exception {
+        return (SimplRegistry) Class.forName(topLevel.getName() + SimplRegistry.NAME).newInstance();
+    }
+
+    @Test
+    public void schemaScript() throws Exception {
+        Class<TestDatabase> dbDef = TestDatabase.class;
+        DatabaseSpec spec = (DatabaseSpec) Class.forName(dbDef.getName() + "$$"
+                + DatabaseSpec.class.getSimpleName()).newInstance();
+        String expected = DatabaseSql.getScript(dbDef.getAnnotation(Database.class).version(), spec.tableSpecs);
+
+        InputStream in = dbDef.getResourceAsStream("test_database" + DatabaseSql.SCRIPT_EXTENSION);
+        try {
+            assertEquals(expected, new Scanner(in, "UTF-8").useDelimiter("\\A").next());
+        } finally {
+            in.close();
+        }
     }
 }
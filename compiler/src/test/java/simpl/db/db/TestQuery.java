@@ -26,4 +26,8 @@ import static simpl.db.db.TestTable.KEY2;
 @Query(table = TestTable.class, columns = {KEY1, KEY2}, limit = 2)
 @Join(table = TestTable.class, columns = {KEY1, KEY2}, on = KEY1 + "=" + KEY2)
 public interface TestQuery extends QueryDef {
+
+    @Query(table = TestTable.class, columns = KEY1)
+    interface Nested extends QueryDef {
+    }
 }
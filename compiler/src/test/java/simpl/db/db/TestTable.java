@@ -21,6 +21,7 @@ import simpl.db.api.Check;
 import simpl.db.api.Column;
 import simpl.db.api.Constraint;
 import simpl.db.api.Default;
+import simpl.db.api.Index;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
 import simpl.db.api.Unique;
@@ -47,4 +48,7 @@ public interface TestTable extends TableDef {
     @Constraint
     @Unique(columns = {KEY1, KEY2})
     String CONST1 = "const1";
+
+    @Index(columns = {KEY3, KEY1}, where = KEY3 + ">0")
+    String INDEX1 = "index1";
 }
@@ -43,9 +43,13 @@ public abstract class SimplDb implements SimplDef {
         public final Class<? extends TableDef> tableDef;
         public final ContentValues contentValues = new ContentValues();
         public final String whereClause;
-        public final String[] whereArgs;
+        public final Object[] whereArgs;
 
         public Update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, String... whereArgs) {
+            this(tableDef, contentValues, whereClause, (Object[]) whereArgs);
+        }
+
+        public Update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, Object... whereArgs) {
             this.tableDef = tableDef;
             this.whereClause = whereClause;
             this.whereArgs = whereArgs;
@@ -55,9 +59,13 @@ public abstract class SimplDb implements SimplDef {
     public static class Delete {
         public final Class<? extends TableDef> tableDef;
         public final String whereClause;
-        public final String[] whereArgs;
+        public final Object[] whereArgs;
 
         public Delete(Class<? extends TableDef> tableDef, String whereClause, String... whereArgs) {
+            this(tableDef, whereClause, (Object[]) whereArgs);
+        }
+
+        public Delete(Class<? extends TableDef> tableDef, String whereClause, Object... whereArgs) {
             this.tableDef = tableDef;
             this.whereClause = whereClause;
             this.whereArgs = whereArgs;
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db.internal;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Utility class for query statements.
+ * Shared by the annotation processor and the runtime to create the same SQL.
+ */
+public final class SimplSql {
+    private SimplSql() {
+    }
+
+    /**
+     * Creates the join clause of two tables.
+     * The format specifiers {@code %1$s} and {@code %2$s} in {@code on} are replaced with the table names.
+     *
+     * @param table   name of the queried table
+     * @param join    name of the joined table
+     * @param type    of the join or {@code null}
+     * @param natural if this is a natural join
+     * @param on      constraint of the join
+     * @return the joined tables
+     */
+    public static String join(String table, String join, String type, boolean natural, String on) {
+        StringBuilder sb = new StringBuilder(table);
+        if (natural)
+            sb.append(" NATURAL");
+        if (type != null)
+            sb.append(' ').append(type);
+        sb.append(" JOIN ").append(join);
+        sb.append(" ON (").append(String.format(Locale.US, on, table, join)).append(')');
+        return sb.toString();
+    }
+
+    /**
+     * Creates a SELECT statement.
+     *
+     * @param table     or joined tables to query
+     * @param columns   to return or {@code null} for all
+     * @param selection or {@code null}
+     * @param groupBy   or {@code null}
+     * @param having    or {@code null}
+     * @param orderBy   or {@code null}
+     * @param limit     or {@code null}
+     * @return the SELECT statement
+     */
+    public static String select(String table, String[] columns, String selection,
+                                String groupBy, String having, String orderBy, String limit) {
+        if (groupBy == null && having != null)
+            throw new IllegalArgumentException("HAVING clauses are only permitted when using a groupBy clause");
+
+        StringBuilder sql = new StringBuilder(120);
+        sql.append("SELECT ");
+        if (columns != null && columns.length != 0) {
+            sql.append(columns[0]);
+            for (int i = 1; i < columns.length; i++)
+                sql.append(", ").append(columns[i]);
+        } else {
+            sql.append('*');
+        }
+        sql.append(" FROM ").append(table);
+        append(sql, " WHERE ", selection);
+        append(sql, " GROUP BY ", groupBy);
+        append(sql, " HAVING ", having);
+        append(sql, " ORDER BY ", orderBy);
+        append(sql, " LIMIT ", limit);
+        return sql.toString();
+    }
+
+    private static void append(StringBuilder sql, String name, String clause) {
+        if (clause != null)
+            sql.append(name).append(clause);
+    }
+
+    /**
+     * Creates the fingerprint of a schema as the SHA-1 hash of its statements.
+     * The order of the statements is ignored.
+     *
+     * @param statements defining the schema
+     * @return the hex encoded fingerprint
+     */
+    public static String fingerprint(String... statements) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        String[] sorted = statements.clone();
+        Arrays.sort(sorted);
+        Charset utf8 = Charset.forName("UTF-8");
+        for (String statement : sorted) {
+            digest.update(statement.getBytes(utf8));
+            digest.update((byte) 0);
+        }
+
+        StringBuilder sb = new StringBuilder(40);
+        for (byte b : digest.digest())
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+}
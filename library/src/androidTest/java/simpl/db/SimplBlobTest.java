@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import android.content.ContentValues;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import simpl.db.db.TestDatabase;
+import simpl.db.db.v2.TypeTest;
+import simpl.db.test.rules.SimplDbTestRule;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static simpl.db.db.v2.TypeTest.BLOB;
+import static simpl.db.db.v2.TypeTest.TEXT;
+
+public class SimplBlobTest {
+    @Rule
+    public SimplDbTestRule mSimplDb = TestDatabase.v(2);
+
+    private static byte[] read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = in.read(buffer)) >= 0)
+            out.write(buffer, 0, count);
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void zeroblob() throws Exception {
+        final int length = 3 * SimplBlob.CHUNK_SIZE + 7;
+        long rowId = SimplBlob.insertZeroblob(mSimplDb.get(), TypeTest.class, null, BLOB, length);
+        assertEquals(length, SimplBlob.length(mSimplDb.get(), TypeTest.class, BLOB, rowId));
+
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        OutputStream out = SimplBlob.openOutputStream(mSimplDb.get(), TypeTest.class, BLOB, rowId);
+        out.write(bytes, 0, 5);
+        out.write(bytes, 5, length - 5);
+        out.close();
+
+        assertEquals(length, SimplBlob.length(mSimplDb.get(), TypeTest.class, BLOB, rowId));
+        assertArrayEquals(bytes, read(SimplBlob.openInputStream(mSimplDb.get(), TypeTest.class, BLOB, rowId)));
+    }
+
+    @Test
+    public void overwrite() throws Exception {
+        long rowId = SimplBlob.insertZeroblob(mSimplDb.get(), TypeTest.class, null, BLOB, 4);
+
+        OutputStream out = SimplBlob.openOutputStream(mSimplDb.get(), TypeTest.class, BLOB, rowId, 2);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        final byte[] bytes = {0, 0, 1, 2, 3};
+        assertArrayEquals(bytes, read(SimplBlob.openInputStream(mSimplDb.get(), TypeTest.class, BLOB, rowId)));
+    }
+
+    @Test
+    public void text() throws Exception {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TEXT, "\u00e4");
+        long rowId = mSimplDb.db().insert(SimplDb.getName(TypeTest.class), null, contentValues);
+
+        try {
+            read(SimplBlob.openInputStream(mSimplDb.get(), TypeTest.class, TEXT, rowId));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            OutputStream out = SimplBlob.openOutputStream(mSimplDb.get(), TypeTest.class, TEXT, rowId);
+            out.write(new byte[]{1});
+            out.close();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -21,11 +21,15 @@ import android.database.Cursor;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 
 import simpl.db.SimplDb.Insert;
 import simpl.db.SimplDb.Insert.Callback;
+import simpl.db.api.Query;
+import simpl.db.api.QueryDef;
 import simpl.db.api.TableDef;
 import simpl.db.db.TestDatabase;
 import simpl.db.db.v2.ColumnTest;
@@ -362,6 +366,61 @@ public class SimplDbTest {
     }
 
 
+    @Test
+    public void warmUp() throws Exception {
+        SimplDb db = mSimplDb.get();
+        db.warmUp();
+
+        Map<String, Long> trace = db.getStartupTrace();
+        assertEquals(Arrays.asList(SimplDb.TRACE_DATABASE, SimplDb.TRACE_TABLES, SimplDb.TRACE_QUERIES,
+                SimplDb.TRACE_OPEN), new ArrayList<>(trace.keySet()));
+        for (long duration : trace.values())
+            assertTrue(duration >= 0);
+    }
+
+    @Query(table = TableTest.class, columns = {KEY, INFO})
+    private interface TableTestQuery extends QueryDef {
+    }
+
+    volatile Thread mNotifier;
+    volatile int mNotifications;
+
+    @Test
+    public void notifyObservers() throws Exception {
+        SimplDb db = mSimplDb.get();
+        SimplDb.Observer observer = new SimplDb.Observer() {
+            @Override
+            public void onTableChanged(Class<? extends QueryDef> queryDef, SimplDb db) {
+                mNotifier = Thread.currentThread();
+                mNotifications++;
+            }
+        };
+        db.registerObserver(observer, TableTestQuery.class);
+        try {
+            mTableInsert.contentValues.put(KEY, 1);
+            insertAndQuery(mTableInsert, TABLE_TABLE);
+            mCursor.close();
+            while (mNotifications < 1)
+                Thread.sleep(100);
+
+            assertTrue(mNotifier.getName().endsWith(":notifier"));
+
+            db.onPause();
+            db.onResume();
+
+            mTableInsert.contentValues.put(KEY, 2);
+            insertAndQuery(mTableInsert, TABLE_TABLE);
+            mCursor.close();
+            while (mNotifications < 2)
+                Thread.sleep(100);
+
+            assertTrue(mNotifier.getName().endsWith(":notifier"));
+        } finally {
+            db.unregisterObserver(observer);
+            db.onPause();
+        }
+    }
+
     private void testForeignKey(String foreignKey) throws Exception {
         mForeignKeyInsert.contentValues.put(foreignKey, 1);
         insertAndQuery(mForeignKeyInsert, FOREIGN_KEY_TABLE);
@@ -26,12 +26,19 @@ import simpl.db.SimplDb.Insert;
 import simpl.db.db.TestDatabase;
 import simpl.db.db.v1.TableTest;
 import simpl.db.db.v2.ColumnTest;
+import simpl.db.db.v4.LazyTest;
+import simpl.db.spec.TableSql;
 import simpl.db.test.rules.SimplDbTestRule;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static simpl.db.SimplDb.getFingerprints;
+import static simpl.db.SimplDb.getIndexes;
 import static simpl.db.SimplDb.getName;
+import static simpl.db.SimplDb.getSql;
 import static simpl.db.SimplDb.getTables;
 import static simpl.db.db.v1.TableTest.DATA;
 import static simpl.db.db.v1.TableTest.DROP;
@@ -52,6 +59,9 @@ public class SimplDbUpgradeTest {
     @Rule
     public SimplDbTestRule mSimplDb3 = TestDatabase.v(3);
 
+    @Rule
+    public SimplDbTestRule mSimplDb4 = TestDatabase.v(4);
+
     @Test
     public void keepAndDropColumns() throws Exception {
         ContentValues values = new ContentValues();
@@ -69,7 +79,10 @@ public class SimplDbUpgradeTest {
             mCursor.close();
         }
 
+        simpl.db.db.v2.DatabaseTest.sMigratedRows = 0;
         mCursor = queryTable(mSimplDb2.get());
+        assertEquals(1, simpl.db.db.v2.DatabaseTest.sMigratedRows);
+        assertFalse(getTables(mSimplDb2.db()).contains("_" + TABLE));
         try {
             assertEquals(-1, mCursor.getColumnIndex(DROP));
             assertTrue(mCursor.moveToFirst());
@@ -106,6 +119,76 @@ public class SimplDbUpgradeTest {
         }
     }
 
+    @Test
+    public void addColumns() throws Exception {
+        ContentValues values = new ContentValues();
+        values.put(DATA, DATA);
+        insertAndQuery(mSimplDb3.get(), values);
+        mCursor.close();
+
+        String sql = getSql(mSimplDb3.db(), TABLE);
+        final String added = simpl.db.db.v4.TableTest.ADDED;
+        assertEquals(sql.substring(0, sql.length() - 1) + ", \"" + added + "\" TEXT)", getSql(mSimplDb4.db(), TABLE));
+
+        mCursor = queryTable(mSimplDb4.get());
+        try {
+            assertTrue(mCursor.moveToFirst());
+            assertEquals(DATA, mCursor.getString(mCursor.getColumnIndex(DATA)));
+            assertTrue(mCursor.isNull(mCursor.getColumnIndex(added)));
+        } finally {
+            mCursor.close();
+        }
+    }
+
+    @Test
+    public void storeFingerprints() throws Exception {
+        String fingerprint = getFingerprints(mSimplDb1.db()).get(TABLE);
+        assertEquals(40, fingerprint.length());
+        assertTrue(getFingerprints(mSimplDb2.db()).containsKey(getName(ColumnTest.class)));
+        assertFalse(fingerprint.equals(getFingerprints(mSimplDb2.db()).get(TABLE)));
+        assertFalse(getFingerprints(mSimplDb3.db()).containsKey(getName(ColumnTest.class)));
+    }
+
+    @Test
+    public void createAndDropIndexes() throws Exception {
+        final String index = TableSql.INDEX_PREFIX + TABLE + '_' + simpl.db.db.v2.TableTest.KEEP_INFO;
+        assertFalse(getIndexes(mSimplDb1.db(), TABLE).containsKey(index));
+        assertTrue(getIndexes(mSimplDb2.db(), TABLE).containsKey(index));
+        assertFalse(getIndexes(mSimplDb3.db(), TABLE).containsKey(index));
+    }
+
+    @Test
+    public void keepUserIndexes() throws Exception {
+        final String index = "user_index";
+        mSimplDb3.db().execSQL("CREATE INDEX " + index + " ON " + TABLE + " (" + DATA + ")");
+        assertTrue(getIndexes(mSimplDb4.db(), TABLE).containsKey(index));
+    }
+
+    volatile Long mRowId;
+
+    @Test
+    public void createLazyTables() throws Exception {
+        final String lazy = getName(LazyTest.class);
+        assertNull(getSql(mSimplDb4.db(), lazy));
+        assertFalse(getFingerprints(mSimplDb4.db()).containsKey(lazy));
+
+        ContentValues values = new ContentValues();
+        values.put(LazyTest.DATA, LazyTest.DATA);
+        mRowId = null;
+        mSimplDb4.get().insert(LazyTest.class, values, new Insert.Callback() {
+            @Override
+            public void onInsertFinished(long rowId, Insert insert, SimplDb db) {
+                mRowId = rowId;
+            }
+        });
+        while (mRowId == null)
+            Thread.sleep(100);
+
+        assertTrue(mRowId > 0);
+        assertNotNull(getSql(mSimplDb4.db(), lazy));
+        assertTrue(getFingerprints(mSimplDb4.db()).containsKey(lazy));
+    }
+
     private void insertAndQuery(SimplDb db, ContentValues values) throws Exception {
         mCursor = null;
         db.insert(TableTest.class, values, new Insert.Callback() {
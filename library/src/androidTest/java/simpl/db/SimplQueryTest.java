@@ -18,16 +18,24 @@ package simpl.db;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import simpl.db.SimplQuery.Filter;
+import simpl.db.SimplQuery.Page;
+import simpl.db.SimplQuery.RowVisitor;
 import simpl.db.api.Join;
 import simpl.db.api.Query;
 import simpl.db.api.QueryDef;
@@ -37,8 +45,12 @@ import simpl.db.db.v10.QueryTest;
 import simpl.db.db.v10.TableTest;
 import simpl.db.test.rules.SimplDbTestRule;
 
+import static android.support.test.InstrumentationRegistry.getInstrumentation;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static simpl.db.SimplQuery.get;
 import static simpl.db.api.JoinType.CROSS;
 import static simpl.db.api.JoinType.LEFT;
@@ -121,6 +133,192 @@ public class SimplQueryTest {
         assertEquals("fOo", mCursor.getString(column));
     }
 
+    @Query(table = QueryTest.class, columns = {QueryTest._ID, QueryTest.KEY}, orderBy = QueryTest._ID)
+    private interface OrderedQueryTestQuery extends QueryDef {
+    }
+
+    @Test
+    public void queryPage() throws Exception {
+        SimplQuery query = get(OrderedQueryTestQuery.class);
+        Page page = new Page(2);
+        int count = 0;
+        long lastId = 0;
+        while (page != null) {
+            mCursor = query.exec(mSimplDb.get(), null, page);
+            while (mCursor.moveToNext()) {
+                long id = mCursor.getLong(mCursor.getColumnIndex(QueryTest._ID));
+                assertTrue(id > lastId);
+                lastId = id;
+                count++;
+            }
+            page = query.next(mCursor, null, page);
+            mCursor.close();
+        }
+        assertEquals(5, count);
+    }
+
+    @Test
+    public void forEach() throws Exception {
+        final ArrayList<String> keys = new ArrayList<>();
+        RowVisitor visitor = new RowVisitor() {
+            @Override
+            public boolean onRow(Cursor row) {
+                keys.add(row.getString(row.getColumnIndex(QueryTest.KEY)));
+                return true;
+            }
+        };
+
+        SQLiteDatabase db = mSimplDb.get().getReadableDatabase();
+        assertEquals(5, get(OrderedQueryTestQuery.class).forEach(db, null, 2, visitor));
+        assertEquals(Arrays.asList("foo", "Foo", "fOo", "FOo", "FOO"), keys);
+
+        keys.clear();
+        assertEquals(5, get(QueryTestQuery.class).forEach(db, null, 2, visitor));
+        assertEquals(5, new HashSet<>(keys).size());
+
+        Filter filter = new Filter();
+        filter.setLimit(3);
+        keys.clear();
+        assertEquals(3, get(OrderedQueryTestQuery.class).forEach(db, filter, 2, visitor));
+        assertEquals(Arrays.asList("foo", "Foo", "fOo"), keys);
+
+        filter = new Filter();
+        filter.setOrderBy(QueryTest.VALUE);
+        keys.clear();
+        assertEquals(5, get(QueryTestQuery.class).forEach(db, filter, 1, visitor));
+        assertEquals(5, new HashSet<>(keys).size());
+    }
+
+    @Test
+    public void scalar() throws Exception {
+        SQLiteDatabase db = mSimplDb.get().getReadableDatabase();
+        SimplQuery query = get(OrderedQueryTestQuery.class);
+        assertEquals(5, query.count(db, null));
+        assertTrue(query.exists(db, null));
+        assertEquals("foo", query.stringForQuery(db, null, QueryTest.KEY));
+        assertEquals(13, query.longForQuery(db, null, "max(" + QueryTest.REF + ")"));
+
+        Filter filter = new Filter();
+        filter.setSelection(QueryTest.REF + "=?", 1L);
+        assertEquals(2, query.count(db, filter));
+        filter.setSelection(QueryTest.REF + "=?", 3L);
+        assertEquals(0, query.count(db, filter));
+        assertFalse(query.exists(db, filter));
+    }
+
+    @Test
+    public void in() throws Exception {
+        SQLiteDatabase db = mSimplDb.get().getReadableDatabase();
+        SimplQuery query = get(OrderedQueryTestQuery.class);
+        Filter filter = new Filter();
+        filter.in(QueryTest.KEY, "foo", "FOO", "none");
+        assertEquals(2, query.count(db, filter));
+
+        long[] refs = new long[1000];
+        for (int i = 0; i < refs.length; i++)
+            refs[i] = i + 2;
+        filter.in(QueryTest.REF, refs);
+        assertEquals(1, query.count(db, filter));
+        mCursor = query.exec(db, filter);
+        assertTrue(mCursor.moveToFirst());
+        assertEquals("FOO", mCursor.getString(mCursor.getColumnIndex(QueryTest.KEY)));
+
+        filter.setSelection("");
+        filter.in(QueryTest.REF, refs);
+        assertEquals(3, query.count(db, filter));
+        assertEquals(13, query.longForQuery(db, filter, "max(" + QueryTest.REF + ")"));
+    }
+
+    volatile Map<Class<? extends QueryDef>, Cursor> mCursors;
+
+    @Test
+    public void querySnapshot() throws Exception {
+        Filter filter = new Filter();
+        filter.setSelection(QueryTest.REF + "=?", 1L);
+        LinkedHashMap<Class<? extends QueryDef>, Filter> queries = new LinkedHashMap<>();
+        queries.put(QueryTestQuery.class, filter);
+        queries.put(TableTest.class, null);
+
+        mSimplDb.get().querySnapshot(queries, new SimplQuery.SnapshotCallback() {
+            @Override
+            public void onSnapshotFinished(Map<Class<? extends QueryDef>, Cursor> cursors, SimplDb db) {
+                mCursors = cursors;
+            }
+        });
+        while (mCursors == null)
+            Thread.sleep(100);
+
+        assertEquals(queries.keySet(), mCursors.keySet());
+        assertEquals(2, mCursors.get(QueryTestQuery.class).getCount());
+        assertEquals(2, mCursors.get(TableTest.class).getCount());
+        for (Cursor cursor : mCursors.values())
+            cursor.close();
+    }
+
+    volatile Map<Class<? extends QueryDef>, Long> mLatencies;
+
+    @Test
+    public void queryAll() throws Exception {
+        LinkedHashMap<Class<? extends QueryDef>, Filter> queries = new LinkedHashMap<>();
+        queries.put(QueryTestQuery.class, null);
+        queries.put(JoinTestQuery.class, null);
+        queries.put(TableTest.class, null);
+
+        mSimplDb.get().queryAll(queries, new SimplQuery.QueryAllCallback() {
+            @Override
+            public void onQueryAllFinished(Map<Class<? extends QueryDef>, Cursor> cursors,
+                                           Map<Class<? extends QueryDef>, Long> latencies, long totalLatency, SimplDb db) {
+                mCursors = cursors;
+                mLatencies = latencies;
+            }
+
+            @Override
+            public void onQueryAllFailed(RuntimeException e, SimplDb db) {
+                throw e;
+            }
+        });
+        while (mCursors == null)
+            Thread.sleep(100);
+
+        assertEquals(queries.keySet(), mCursors.keySet());
+        assertEquals(queries.keySet(), mLatencies.keySet());
+        assertEquals(5, mCursors.get(QueryTestQuery.class).getCount());
+        assertEquals(4, mCursors.get(JoinTestQuery.class).getCount());
+        assertEquals(2, mCursors.get(TableTest.class).getCount());
+        for (Cursor cursor : mCursors.values())
+            cursor.close();
+    }
+
+    volatile RuntimeException mError;
+
+    @Test
+    public void queryAllFailed() throws Exception {
+        Filter filter = new Filter();
+        filter.setSelection("no_such_column=1");
+        LinkedHashMap<Class<? extends QueryDef>, Filter> queries = new LinkedHashMap<>();
+        queries.put(QueryTestQuery.class, null);
+        queries.put(TableTest.class, filter);
+        queries.put(JoinTestQuery.class, null);
+
+        mSimplDb.get().queryAll(queries, new SimplQuery.QueryAllCallback() {
+            @Override
+            public void onQueryAllFinished(Map<Class<? extends QueryDef>, Cursor> cursors,
+                                           Map<Class<? extends QueryDef>, Long> latencies, long totalLatency, SimplDb db) {
+                mCursors = cursors;
+            }
+
+            @Override
+            public void onQueryAllFailed(RuntimeException e, SimplDb db) {
+                mError = e;
+            }
+        });
+        while (mError == null && mCursors == null)
+            Thread.sleep(100);
+
+        assertNull(mCursors);
+        assertTrue(mError instanceof SQLiteException);
+    }
+
     private void insertToJoinTest(ContentValues values, String extra, int ref) {
         values.put(JoinTest.EXTRA, extra);
         values.put(JoinTest.REF, ref);
@@ -211,6 +409,72 @@ public class SimplQueryTest {
         }
     }
 
+    final ArrayList<Cursor> mCursorList = new ArrayList<>();
+    final SimplQuery.Callback mCallback = new SimplQuery.Callback() {
+        @Override
+        public void onQueryFinished(Cursor cursor, Class<? extends QueryDef> queryDef, Filter filter, SimplDb db) {
+            synchronized (mCursorList) {
+                mCursorList.add(cursor);
+            }
+        }
+    };
+
+    private List<Cursor> awaitCursors(int count) {
+        for (int i = 0; i < 50; i++)
+            synchronized (mCursorList) {
+                if (mCursorList.size() >= count)
+                    return new ArrayList<>(mCursorList);
+                sleep(100);
+            }
+        synchronized (mCursorList) {
+            return new ArrayList<>(mCursorList);
+        }
+    }
+
+    @Test
+    public void joinPendingQueries() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mSimplDb.get().query(TableTest.class, new Filter(), mCallback);
+                mSimplDb.get().query(TableTest.class, new Filter(), mCallback);
+            }
+        });
+
+        List<Cursor> cursors = awaitCursors(2);
+        assertEquals(2, cursors.size());
+        assertTrue(cursors.get(0) != cursors.get(1));
+        for (Cursor cursor : cursors)
+            try {
+                assertEquals(2, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+    }
+
+    @Test
+    public void failedPendingQuery() throws Exception {
+        Filter filter = new Filter();
+        filter.setSelection("EXISTS (SELECT 1 FROM pending_test)");
+        try {
+            mSimplDb.get().query(TableTest.class, filter, mCallback);
+            fail();
+        } catch (SQLiteException e) {
+            assertTrue(e.getMessage().contains("pending_test"));
+        }
+
+        mSimplDb.db().execSQL("CREATE TABLE pending_test (a)");
+        mSimplDb.get().query(TableTest.class, filter, mCallback);
+
+        List<Cursor> cursors = awaitCursors(1);
+        assertEquals(1, cursors.size());
+        try {
+            assertEquals(0, cursors.get(0).getCount());
+        } finally {
+            cursors.get(0).close();
+        }
+    }
+
     @SuppressWarnings("EmptyCatchBlock")
     private void sleep(int millis) {
         try {
@@ -40,6 +40,8 @@ public abstract class TestDatabase extends SimplDb {
                 return simpl.db.db.v2.DatabaseTest.class;
             case 3:
                 return simpl.db.db.v3.DatabaseTest.class;
+            case 4:
+                return simpl.db.db.v4.DatabaseTest.class;
             case 10:
                 return simpl.db.db.v10.DatabaseTest.class;
             case 21:
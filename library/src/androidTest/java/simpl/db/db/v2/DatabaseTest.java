@@ -21,4 +21,15 @@ import simpl.db.db.TestDatabase;
 
 @Database(version = 2, tables = {ColumnTest.class, ConstraintTest.class, ForeignKeyTest.class, TableTest.class, TypeTest.class})
 public class DatabaseTest extends TestDatabase {
+    public static volatile long sMigratedRows;
+
+    @Override
+    protected int getMigrationChunkSize() {
+        return 1;
+    }
+
+    @Override
+    protected void onMigrationProgress(String table, long copied, long total) {
+        sMigratedRows = copied;
+    }
 }
@@ -18,6 +18,7 @@ package simpl.db.db.v2;
 
 import simpl.db.api.Check;
 import simpl.db.api.Column;
+import simpl.db.api.Index;
 import simpl.db.api.PrimaryKey;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
@@ -47,4 +48,7 @@ public interface TableTest extends TableDef {
 
     @Column(type = NUMERIC)
     String KEEP = "keep";
+
+    @Index(columns = {KEEP, INFO})
+    String KEEP_INFO = "keep_info";
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.WeakHashMap;
+
+/**
+ * Utility class to bind typed arguments to compiled statements.
+ * <p>
+ * Supported types are {@code null}, {@link Long}, {@link Integer}, {@link Short}, {@link Byte},
+ * {@link Boolean}, {@link Double}, {@link Float}, {@code byte[]} and {@link String}.
+ * Any other value is bound as its string representation.
+ * </p>
+ */
+final class BindArgs {
+    private static final WeakHashMap<SQLiteDatabase, CursorFactory> sCursorFactories = new WeakHashMap<>();
+
+    private BindArgs() {
+    }
+
+    /**
+     * Remembers the cursor factory {@code db} was opened with, so {@link Factory} can wrap it.
+     *
+     * @param db      opened
+     * @param factory of {@code db} or {@code null}
+     */
+    static void setCursorFactory(SQLiteDatabase db, CursorFactory factory) {
+        synchronized (sCursorFactories) {
+            if (factory != null)
+                sCursorFactories.put(db, factory);
+            else
+                sCursorFactories.remove(db);
+        }
+    }
+
+    /**
+     * @param args to convert
+     * @return {@code args} as strings or {@code null} if any argument is not a string
+     */
+    static String[] toStrings(Object[] args) {
+        if (args == null)
+            return null;
+        if (args instanceof String[])
+            return (String[]) args;
+
+        String[] strings = new String[args.length];
+        for (int i = 0; i < args.length; i++)
+            if (args[i] instanceof String)
+                strings[i] = (String) args[i];
+            else
+                return null;
+        return strings;
+    }
+
+    /**
+     * @param program to bind {@code args} to
+     * @param index   of the first argument, starting at 1
+     * @param args    to bind or {@code null}
+     */
+    static void bind(SQLiteProgram program, int index, Object[] args) {
+        if (args != null)
+            for (Object arg : args)
+                bind(program, index++, arg);
+    }
+
+    /**
+     * @param program to bind {@code arg} to
+     * @param index   of the argument, starting at 1
+     * @param arg     to bind
+     */
+    static void bind(SQLiteProgram program, int index, Object arg) {
+        if (arg == null)
+            program.bindNull(index);
+        else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte)
+            program.bindLong(index, ((Number) arg).longValue());
+        else if (arg instanceof Boolean)
+            program.bindLong(index, (Boolean) arg ? 1 : 0);
+        else if (arg instanceof Double || arg instanceof Float)
+            program.bindDouble(index, ((Number) arg).doubleValue());
+        else if (arg instanceof byte[])
+            program.bindBlob(index, (byte[]) arg);
+        else
+            program.bindString(index, arg.toString());
+    }
+
+    /**
+     * Executes an UPDATE or DELETE statement.
+     *
+     * @param db        to execute on
+     * @param statement to execute
+     * @return the count of rows changed
+     */
+    static int executeUpdateDelete(SQLiteDatabase db, SQLiteStatement statement) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            return executeUpdateDelete(statement);
+
+        statement.execute();
+        SQLiteStatement changes = db.compileStatement("SELECT changes()");
+        try {
+            return (int) changes.simpleQueryForLong();
+        } finally {
+            changes.close();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int executeUpdateDelete(SQLiteStatement statement) {
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * {@code Factory} binds typed arguments to the query of the cursor.
+     * The cursor is created by the factory of the database, if there is one.
+     */
+    static final class Factory implements CursorFactory {
+        private final CursorFactory mFactory;
+        private final Object[] mArgs;
+
+        /**
+         * @param db   to query
+         * @param args to bind
+         */
+        Factory(SQLiteDatabase db, Object[] args) {
+            synchronized (sCursorFactories) {
+                mFactory = sCursorFactories.get(db);
+            }
+            mArgs = args;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            bind(query, 1, mArgs);
+            if (mFactory != null)
+                return mFactory.newCursor(db, masterQuery, editTable, query);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+                return newCursor(masterQuery, editTable, query);
+            return new SQLiteCursor(db, masterQuery, editTable, query);
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static Cursor newCursor(SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import java.util.Locale;
+
+/**
+ * {@code CacheStats} is an immutable snapshot of the statistics of a cache.
+ */
+public final class CacheStats {
+    /**
+     * Count of lookups answered by the cache.
+     */
+    public final long hitCount;
+    /**
+     * Count of lookups not answered by the cache.
+     */
+    public final long missCount;
+    /**
+     * Count of entries removed to respect the bounds of the cache.
+     */
+    public final long evictionCount;
+    /**
+     * Count of entries removed because of changes to the database.
+     */
+    public final long invalidationCount;
+    /**
+     * Current count of entries within the cache.
+     */
+    public final int size;
+
+    CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+        this(hitCount, missCount, evictionCount, 0, size);
+    }
+
+    CacheStats(long hitCount, long missCount, long evictionCount, long invalidationCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "CacheStats[hits=%d, misses=%d, evictions=%d, invalidations=%d, size=%d]",
+                hitCount, missCount, evictionCount, invalidationCount, size);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import simpl.db.api.QueryDef;
+import simpl.db.api.TableDef;
+
+/**
+ * {@code ResultCache} keeps the materialized results of the most recently used queries.
+ * The cache is bounded by the count of entries and the estimated size of all results.
+ */
+final class ResultCache {
+    private final LinkedHashMap<Key, Snapshot> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxEntries;
+    private final long mMaxBytes;
+    private long mBytes, mGeneration;
+    private long mHitCount, mMissCount, mEvictionCount, mInvalidationCount;
+
+    /**
+     * @param maxEntries to keep
+     * @param maxBytes   to keep
+     */
+    ResultCache(int maxEntries, long maxBytes) {
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+    }
+
+    long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(Key, Snapshot, long)}
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @param key of the query
+     * @return a new cursor for the cached result or {@code null}
+     */
+    Cursor get(Key key) {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = mEntries.get(key);
+            if (snapshot == null) {
+                mMissCount++;
+                return null;
+            }
+            mHitCount++;
+        }
+        return snapshot.toCursor();
+    }
+
+    /**
+     * Stores the {@code snapshot} unless the cache was invalidated since {@code generation}.
+     *
+     * @param key        of the query
+     * @param snapshot   of the result
+     * @param generation of the cache before executing the query
+     */
+    synchronized void put(Key key, Snapshot snapshot, long generation) {
+        if (generation != mGeneration || snapshot.bytes > mMaxBytes)
+            return;
+
+        Snapshot previous = mEntries.put(key, snapshot);
+        if (previous != null)
+            mBytes -= previous.bytes;
+        mBytes += snapshot.bytes;
+
+        Iterator<Snapshot> it = mEntries.values().iterator();
+        while (mEntries.size() > mMaxEntries || mBytes > mMaxBytes) {
+            mBytes -= it.next().bytes;
+            it.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Removes all results affected by {@code changes}.
+     *
+     * @param changes of tables mapped to the changed columns or {@code null} for all
+     */
+    synchronized void invalidate(Map<Class<? extends TableDef>, Set<String>> changes) {
+        mGeneration++;
+
+        Iterator<Entry<Key, Snapshot>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Key, Snapshot> entry = it.next();
+            if (entry.getKey().isAffectedBy(changes)) {
+                mBytes -= entry.getValue().bytes;
+                it.remove();
+                mInvalidationCount++;
+            }
+        }
+    }
+
+    synchronized CacheStats getStats() {
+        return new CacheStats(mHitCount, mMissCount, mEvictionCount, mInvalidationCount, mEntries.size());
+    }
+
+    /**
+     * Identifies a query by its SQL and arguments.
+     */
+    static final class Key {
+        final Class<? extends QueryDef> queryDef;
+        private final SimplQuery.Filter mFilter;
+        private final String mSql;
+        private final Object[] mArgs;
+        private final int mHashCode;
+
+        Key(Class<? extends QueryDef> queryDef, SimplQuery.Filter filter) {
+            SimplQuery query = SimplQuery.get(queryDef);
+            this.queryDef = queryDef;
+            mFilter = new SimplQuery.Filter();
+            mFilter.setFrom(filter);
+            mSql = query.getSql(filter);
+            Object[] args = query.getSelectionArgs(filter);
+            Object[] inValues = filter != null ? filter.getInValues() : null;
+            if (inValues != null)
+                args = new Object[]{args, inValues};
+            mArgs = args != null ? args.clone() : null;
+            mHashCode = 31 * (31 * queryDef.hashCode() + mSql.hashCode()) + Arrays.deepHashCode(mArgs);
+        }
+
+        boolean isAffectedBy(Map<Class<? extends TableDef>, Set<String>> changes) {
+            if (changes == null)
+                return true;
+
+            SimplQuery query = SimplQuery.get(queryDef);
+            for (Class<? extends TableDef> tableDef : query.getTables())
+                if (changes.containsKey(tableDef) && query.isAffectedBy(changes.get(tableDef), mFilter))
+                    return true;
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return mHashCode == key.mHashCode && queryDef == key.queryDef
+                    && mSql.equals(key.mSql) && Arrays.deepEquals(mArgs, key.mArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * Immutable copy of the rows of a cursor.
+     */
+    static final class Snapshot {
+        private static final int ROW_BYTES = 16;
+        private static final int VALUE_BYTES = 16;
+
+        final long bytes;
+        private final String[] mColumns;
+        private final ArrayList<Object[]> mRows;
+
+        Snapshot(String[] columns, ArrayList<Object[]> rows, long bytes) {
+            mColumns = columns;
+            mRows = rows;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Copies all rows of {@code cursor} if they fit into {@code maxBytes}.
+         *
+         * @param cursor   to copy
+         * @param maxBytes of the snapshot
+         * @return the snapshot or {@code null} if the result is too large
+         */
+        static Snapshot from(Cursor cursor, long maxBytes) {
+            String[] columns = cursor.getColumnNames();
+            ArrayList<Object[]> rows = new ArrayList<>(cursor.getCount());
+            long bytes = 0;
+
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columns.length];
+                bytes += ROW_BYTES;
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = getValue(cursor, i);
+                    bytes += sizeOf(row[i]);
+                }
+                if (bytes > maxBytes)
+                    return null;
+                rows.add(row);
+            }
+
+            return new Snapshot(columns, rows, bytes);
+        }
+
+        static Object getValue(Cursor cursor, int column) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+                return getTypedValue(cursor, column);
+            return cursor.isNull(column) ? null : cursor.getString(column);
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static Object getTypedValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                case Cursor.FIELD_TYPE_STRING:
+                    return cursor.getString(column);
+                case Cursor.FIELD_TYPE_BLOB:
+                    return cursor.getBlob(column);
+                default:
+                    return null;
+            }
+        }
+
+        static long sizeOf(Object value) {
+            if (value instanceof String)
+                return VALUE_BYTES + 2 * ((String) value).length();
+            if (value instanceof byte[])
+                return VALUE_BYTES + ((byte[]) value).length;
+            return VALUE_BYTES;
+        }
+
+        /**
+         * @return a new cursor positioned before the first row
+         */
+        Cursor toCursor() {
+            MatrixCursor cursor = new MatrixCursor(mColumns, mRows.size());
+            for (Object[] row : mRows)
+                cursor.addRow(row);
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map.Entry;
+
+import simpl.db.api.TableDef;
+
+/**
+ * {@code SimplBlob} streams large blob values in chunks.
+ * <p>
+ * Values are read and written with {@code substr()} in chunks well below the size of a cursor window,
+ * so blobs larger than a cursor window can be handled without loading them into the Java heap.
+ * Streams block while accessing the database and must not be used on the UI thread.
+ * </p>
+ * <p>
+ * SQLite has no incremental blob I/O on Android, so this does not save any database work:
+ * SQLite loads the complete value into its memory for every chunk read or written,
+ * and every chunk written rewrites the complete value.
+ * Writing a blob of {@code n} bytes therefore costs {@code O(n²/64 KiB)} I/O.
+ * Keep values of many megabytes in files instead.
+ * </p>
+ * <p>
+ * {@code TEXT} values are rejected, since {@code substr()} counts characters for them, not bytes.
+ * </p>
+ */
+public final class SimplBlob {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private SimplBlob() {
+    }
+
+    /**
+     * @param db       to query
+     * @param tableDef to query
+     * @param column   of the blob
+     * @param rowId    of the row
+     * @return the length of the blob in bytes or in characters for a {@code TEXT} value
+     * @throws SQLiteDoneException if there is no such row
+     */
+    public static long length(SimplDb db, Class<? extends TableDef> tableDef, String column, long rowId) {
+        SQLiteStatement statement = db.getReadableDatabase().compileStatement(
+                "SELECT length(" + column + ") FROM " + SimplDb.getName(tableDef) + " WHERE rowid=?");
+        try {
+            statement.bindLong(1, rowId);
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Inserts a row with a blob of {@code length} zeros preallocated in {@code column}.
+     * Use {@link #openOutputStream(SimplDb, Class, String, long)} to fill the blob afterwards.
+     *
+     * @param db            to insert into
+     * @param tableDef      to insert into
+     * @param contentValues to insert besides the blob or {@code null}
+     * @param column        of the blob
+     * @param length        of the blob in bytes
+     * @return the row id of the inserted row
+     */
+    public static long insertZeroblob(SimplDb db, Class<? extends TableDef> tableDef,
+                                      ContentValues contentValues, String column, long length) {
+        StringBuilder columns = new StringBuilder(column);
+        StringBuilder values = new StringBuilder("zeroblob(?)");
+        Object[] args = new Object[contentValues != null ? contentValues.size() + 1 : 1];
+        args[0] = length;
+        if (contentValues != null) {
+            int i = 1;
+            for (Entry<String, Object> value : contentValues.valueSet()) {
+                columns.append(',').append(value.getKey());
+                values.append(",?");
+                args[i++] = value.getValue();
+            }
+        }
+
+        long rowId;
+        synchronized (db) {
+            SQLiteStatement statement = db.getWritableDatabase().compileStatement("INSERT INTO "
+                    + SimplDb.getName(tableDef) + " (" + columns + ") VALUES (" + values + ")");
+            try {
+                BindArgs.bind(statement, 1, args);
+                rowId = statement.executeInsert();
+            } finally {
+                statement.close();
+            }
+        }
+
+        if (rowId >= 0)
+            db.sendTableChanged(tableDef, null);
+        return rowId;
+    }
+
+    /**
+     * @param db       to query
+     * @param tableDef to query
+     * @param column   of the blob
+     * @param rowId    of the row
+     * @return a stream reading the blob from its start
+     */
+    public static InputStream openInputStream(SimplDb db, Class<? extends TableDef> tableDef, String column, long rowId) {
+        return new BlobInputStream(db.getReadableDatabase(), SimplDb.getName(tableDef), column, rowId);
+    }
+
+    /**
+     * Opens a stream overwriting the blob starting at {@code offset}.
+     * Bytes written past the current end of the blob are appended.
+     * The blob is changed with each chunk written and observers are notified on {@link OutputStream#close()}.
+     *
+     * @param db       to update
+     * @param tableDef to update
+     * @param column   of the blob
+     * @param rowId    of the row
+     * @param offset   to start writing at
+     * @return a stream writing to the blob
+     * @see #insertZeroblob(SimplDb, Class, ContentValues, String, long)
+     */
+    public static OutputStream openOutputStream(SimplDb db, Class<? extends TableDef> tableDef, String column, long rowId, long offset) {
+        return new BlobOutputStream(db, tableDef, column, rowId, offset);
+    }
+
+    /**
+     * Opens a stream overwriting the blob from its start.
+     *
+     * @param db       to update
+     * @param tableDef to update
+     * @param column   of the blob
+     * @param rowId    of the row
+     * @return a stream writing to the blob
+     * @see #openOutputStream(SimplDb, Class, String, long, long)
+     */
+    public static OutputStream openOutputStream(SimplDb db, Class<? extends TableDef> tableDef, String column, long rowId) {
+        return openOutputStream(db, tableDef, column, rowId, 0);
+    }
+
+    /**
+     * Reads a blob chunk by chunk.
+     */
+    private static final class BlobInputStream extends InputStream {
+        private final SQLiteDatabase mDb;
+        private final String mColumn;
+        private final String mSql;
+        private final long mRowId;
+        private byte[] mChunk;
+        private int mPosition;
+        private long mOffset;
+        private boolean mEnd;
+
+        BlobInputStream(SQLiteDatabase db, String table, String column, long rowId) {
+            mDb = db;
+            mColumn = column;
+            mSql = "SELECT typeof(" + column + "),substr(" + column + ",?,?) FROM " + table + " WHERE rowid=?";
+            mRowId = rowId;
+        }
+
+        private boolean fill() throws IOException {
+            if (mChunk != null && mPosition < mChunk.length)
+                return true;
+            if (mEnd)
+                return false;
+
+            Object[] args = {mOffset + 1, CHUNK_SIZE, mRowId};
+            Cursor cursor = mDb.rawQueryWithFactory(new BindArgs.Factory(mDb, args), mSql, null, null);
+            try {
+                if (!cursor.moveToFirst())
+                    throw new IOException("row " + mRowId + " does not exist");
+                if ("text".equals(cursor.getString(0)))
+                    throw new IOException(mColumn + " of row " + mRowId + " is not a blob");
+                mChunk = cursor.isNull(1) ? new byte[0] : cursor.getBlob(1);
+            } finally {
+                cursor.close();
+            }
+
+            mPosition = 0;
+            mOffset += mChunk.length;
+            mEnd = mChunk.length < CHUNK_SIZE;
+            return mChunk.length > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? mChunk[mPosition++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (!fill())
+                return -1;
+
+            int count = Math.min(length, mChunk.length - mPosition);
+            System.arraycopy(mChunk, mPosition, buffer, offset, count);
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mChunk != null ? mChunk.length - mPosition : 0;
+        }
+    }
+
+    /**
+     * Writes a blob chunk by chunk by splicing each chunk into the stored value, which rewrites the complete value.
+     */
+    private static final class BlobOutputStream extends OutputStream {
+        private final SimplDb mDb;
+        private final Class<? extends TableDef> mTableDef;
+        private final String mColumn;
+        private final String mSql;
+        private final long mRowId;
+        private final byte[] mChunk = new byte[CHUNK_SIZE];
+        private int mPosition;
+        private long mOffset;
+        private boolean mChanged, mClosed;
+
+        BlobOutputStream(SimplDb db, Class<? extends TableDef> tableDef, String column, long rowId, long offset) {
+            mDb = db;
+            mTableDef = tableDef;
+            mColumn = column;
+            mRowId = rowId;
+            mOffset = offset;
+            String value = "coalesce(" + column + ",X'')";
+            mSql = "UPDATE " + SimplDb.getName(tableDef) + " SET " + column + "=CAST(substr(" + value + ",1,?)||?||substr("
+                    + value + ",?) AS BLOB) WHERE rowid=? AND typeof(" + column + ")<>'text'";
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (mPosition == mChunk.length)
+                flush();
+            mChunk[mPosition++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (mPosition == mChunk.length)
+                    flush();
+                int count = Math.min(length, mChunk.length - mPosition);
+                System.arraycopy(buffer, offset, mChunk, mPosition, count);
+                mPosition += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (mClosed)
+                throw new IOException("stream closed");
+            if (mPosition == 0)
+                return;
+
+            byte[] chunk = mPosition == mChunk.length ? mChunk : Arrays.copyOf(mChunk, mPosition);
+            Object[] args = {mOffset, chunk, mOffset + mPosition + 1, mRowId};
+            synchronized (mDb) {
+                SQLiteDatabase db = mDb.getWritableDatabase();
+                SQLiteStatement statement = db.compileStatement(mSql);
+                try {
+                    BindArgs.bind(statement, 1, args);
+                    if (BindArgs.executeUpdateDelete(db, statement) == 0)
+                        throw new IOException("row " + mRowId + " does not exist or its " + mColumn + " is not a blob");
+                } finally {
+                    statement.close();
+                }
+            }
+
+            mOffset += mPosition;
+            mPosition = 0;
+            mChanged = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed)
+                return;
+            try {
+                flush();
+            } finally {
+                mClosed = true;
+                if (mChanged)
+                    mDb.sendTableChanged(mTableDef, Collections.singleton(mColumn));
+            }
+        }
+    }
+}
@@ -16,13 +16,16 @@
 
 package simpl.db;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -30,6 +33,10 @@ import android.os.Looper;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
@@ -40,11 +47,23 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import simpl.db.api.Check;
 import simpl.db.api.Collate;
@@ -53,6 +72,7 @@ import simpl.db.api.Constraint;
 import simpl.db.api.Database;
 import simpl.db.api.Default;
 import simpl.db.api.ForeignKey;
+import simpl.db.api.Index;
 import simpl.db.api.NotNull;
 import simpl.db.api.PrimaryKey;
 import simpl.db.api.QueryDef;
@@ -63,7 +83,10 @@ import simpl.db.api.Unique;
 import simpl.db.api.WithoutRowid;
 import simpl.db.internal.SimplName;
 import simpl.db.spec.DatabaseSpec;
+import simpl.db.spec.DatabaseSql;
+import simpl.db.spec.SimplRegistry;
 import simpl.db.spec.TableSpec;
+import simpl.db.spec.TableSql;
 
 /**
  * {@code SimplDb} is the base class for all simplDb databases.
@@ -84,12 +107,30 @@ public abstract class SimplDb implements SimplDef {
     private static final String DATABASE_SPEC = "$$DatabaseSpec";
     private static final String TABLE_SPEC = "$$TableSpec";
 
+    /**
+     * Phase of {@link #getStartupTrace()} loading the database spec in the constructor.
+     */
+    public static final String TRACE_DATABASE = "database";
+    /**
+     * Phase of {@link #getStartupTrace()} loading the table specs.
+     */
+    public static final String TRACE_TABLES = "tables";
+    /**
+     * Phase of {@link #getStartupTrace()} loading the query specs.
+     */
+    public static final String TRACE_QUERIES = "queries";
+    /**
+     * Phase of {@link #getStartupTrace()} opening, creating or upgrading the database.
+     */
+    public static final String TRACE_OPEN = "open";
+
     private static final HashMap<Class<? extends SimplDb>, DatabaseSpec> D = new HashMap<>();
     private static final HashMap<Class<?>, String> S = new HashMap<>();
     private static final HashMap<Class<? extends TableDef>, TableSpec> T = new HashMap<>();
+    private static final HashMap<String, SimplRegistry> R = new HashMap<>();
 
     private static final Handler uiHandler = new Handler(Looper.getMainLooper());
-    private static Handler sQuitter, sWorker;
+    private static Handler sQuitter, sWorker, sNotifier;
     private static final Runnable QUITTER = new Runnable() {
         @Override
         public void run() {
@@ -100,10 +141,17 @@ public abstract class SimplDb implements SimplDef {
     };
 
     private static final WeakHashMap<SimplDb, Boolean> sBlocksQuitter = new WeakHashMap<>();
-    private static final HashMap<Class<? extends TableDef>, HashMap<Observer, HashSet<Class<? extends QueryDef>>>> sObservers = new HashMap<>();
+    private static final HashMap<Class<? extends TableDef>, HashMap<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>>> sObservers = new HashMap<>();
+    private static final SimplQuery.Filter UNKNOWN_FILTER = new SimplQuery.Filter();
+    private static final HashMap<Class<? extends SimplDb>, ResultCache> sResultCaches = new HashMap<>();
+    private static final AtomicLong sChangeCount = new AtomicLong();
 
     private final Context mContext;
     private final SQLiteOpenHelper mSQLiteOpenHelper;
+    private final HashMap<ResultCache.Key, PendingQuery> mPendingQueries = new HashMap<>();
+    private ThreadPoolExecutor mReaders;
+    private final LinkedHashMap<String, Long> mStartupTrace = new LinkedHashMap<>();
+    private final HashSet<Class<? extends TableDef>> mLazyTables = new HashSet<>();
 
     /**
      * Stores the name of the database.
@@ -123,11 +171,13 @@ public abstract class SimplDb implements SimplDef {
      * @param context used to create the {@link SQLiteOpenHelper} instance
      */
     protected SimplDb(Context context) {
+        long start = System.nanoTime();
         DatabaseSpec spec = loadDatabaseSpec(getClass());
 
         name = getName(spec.name);
         version = spec.annotation.version();
         Log.v(TAG, name + ':' + version);
+        trace(TRACE_DATABASE, start);
 
         mTableDefs = Collections.unmodifiableList(Arrays.asList(spec.annotation.tables()));
 
@@ -142,22 +192,19 @@ public abstract class SimplDb implements SimplDef {
         if (spec != null)
             return spec;
 
-        String databaseSpecName = databaseDef.getName() + DATABASE_SPEC;
         try {
-            spec = (DatabaseSpec) Class.forName(databaseSpecName).newInstance();
+            spec = (DatabaseSpec) newSpec(databaseDef);
+        } catch (ClassCastException e) {
+            throw new SimplError(databaseDef.getName() + DATABASE_SPEC + " must extend " + DatabaseSpec.class);
+        }
+        if (spec != null) {
             if (D.put(databaseDef, spec) == null) {
                 for (TableSpec tableSpec : spec.tableSpecs)
-                    if (T.put(tableSpec.simplDef, tableSpec) == null)
+                    if (T.put(tableSpec.simplDef, compile(tableSpec)) == null)
                         S.put(tableSpec.simplDef, tableSpec.name);
                 S.put(databaseDef, spec.name);
             }
             return spec;
-        } catch (ClassCastException e) {
-            throw new SimplError(databaseSpecName + " must extend " + DatabaseSpec.class);
-        } catch (ClassNotFoundException e) {
-            Log.i(TAG, databaseSpecName + " not found");
-        } catch (Exception e) {
-            Log.e(TAG, "error", e);
         }
 
         Database database = databaseDef.getAnnotation(Database.class);
@@ -174,18 +221,15 @@ public abstract class SimplDb implements SimplDef {
         if (spec != null)
             return spec;
 
-        String tableSpecName = tableDef.getName() + TABLE_SPEC;
         try {
-            spec = (TableSpec) Class.forName(tableSpecName).newInstance();
-            if (T.put(tableDef, spec) == null)
+            spec = (TableSpec) newSpec(tableDef);
+        } catch (ClassCastException e) {
+            throw new SimplError(tableDef.getName() + TABLE_SPEC + " must extend " + TableSpec.class);
+        }
+        if (spec != null) {
+            if (T.put(tableDef, compile(spec)) == null)
                 S.put(tableDef, spec.name);
             return spec;
-        } catch (ClassCastException e) {
-            throw new SimplError(tableSpecName + " must extend " + TableSpec.class);
-        } catch (ClassNotFoundException e) {
-            Log.i(TAG, tableSpecName + " not found");
-        } catch (Exception e) {
-            Log.e(TAG, "error", e);
         }
 
         Table table = tableDef.getAnnotation(Table.class);
@@ -197,11 +241,46 @@ public abstract class SimplDb implements SimplDef {
         for (Field field : tableDef.getFields()) {
             loadConstraint(field, spec);
             loadColumnSpec(field, spec);
+            loadIndex(field, spec);
         }
-        T.put(tableDef, spec);
+        T.put(tableDef, compile(spec));
         return spec;
     }
 
+    /**
+     * Creates the generated spec of {@code simplDef} with the {@link SimplRegistry} of its top-level class.
+     *
+     * @param simplDef annotated class
+     * @return a new spec instance or {@code null} if there is none
+     */
+    static synchronized Object newSpec(Class<?> simplDef) {
+        String name = simplDef.getName();
+        int nested = name.indexOf('$', name.lastIndexOf('.') + 1);
+        String topLevel = nested < 0 ? name : name.substring(0, nested);
+        if (!R.containsKey(topLevel)) {
+            try {
+                R.put(topLevel, (SimplRegistry) Class.forName(topLevel + SimplRegistry.NAME).newInstance());
+            } catch (ClassNotFoundException e) {
+                R.put(topLevel, null);
+            } catch (Exception e) {
+                throw new SimplError(e);
+            }
+        }
+
+        SimplRegistry registry = R.get(topLevel);
+        return registry != null ? registry.newSpec(simplDef) : null;
+    }
+
+    private static TableSpec compile(TableSpec tableSpec) {
+        if (tableSpec.sql == null)
+            try {
+                new TableSql().compile(tableSpec);
+            } catch (IllegalArgumentException e) {
+                throw new SimplError(e.getMessage());
+            }
+        return tableSpec;
+    }
+
     private static void loadConstraints(TableSpec tableSpec) {
         Class<? extends TableDef> tableDef = tableSpec.simplDef;
         HashMap<String, Annotation> constraints = tableSpec.constraints;
@@ -285,6 +364,27 @@ public abstract class SimplDb implements SimplDef {
         throw new SimplError(String.format(Locale.UK, MSG_FORMAT, "Column", fieldName, tableSpec.name, name));
     }
 
+    private static boolean loadIndex(Field field, TableSpec tableSpec) {
+        Index index = field.getAnnotation(Index.class);
+        if (index == null)
+            return false;
+
+        String fieldName = field.getName();
+        String name = getName(fieldName);
+        if (isPublicStaticFinalString(field)) {
+            try {
+                if (name.equals(field.get(null))) {
+                    tableSpec.indexes.put(name, index);
+                    return true;
+                }
+            } catch (Exception e) {
+                Log.d(SimplDb.TAG, "assert", e);
+            }
+        }
+
+        throw new SimplError(String.format(Locale.UK, MSG_FORMAT, "Index", fieldName, tableSpec.name, name));
+    }
+
 	/* SQLiteOpenHelper wrapper */
 
     /**
@@ -311,22 +411,35 @@ public abstract class SimplDb implements SimplDef {
     }
 
     /**
-     * Close any open database.
+     * Close any open database and clear the result cache of this database.
      *
      * @see SQLiteOpenHelper#close()
      */
     public final void close() {
+        synchronized (this) {
+            if (mReaders != null) {
+                mReaders.shutdown();
+                mReaders = null;
+            }
+        }
+        synchronized (mLazyTables) {
+            mLazyTables.clear();
+        }
         mSQLiteOpenHelper.close();
+        invalidateResultCache();
     }
 
     /**
-     * Delete this database completely.
+     * Delete this database completely and clear its result cache.
      *
      * @see SQLiteOpenHelper#close()
      * @see SQLiteDatabase#deleteDatabase(File)
      * @see Context#deleteDatabase(String)
      */
     public final void delete() {
+        synchronized (mLazyTables) {
+            mLazyTables.clear();
+        }
         mSQLiteOpenHelper.close();
         mContext.deleteDatabase(name);
         mContext.deleteDatabase(name + "-journal");
@@ -337,6 +450,7 @@ public abstract class SimplDb implements SimplDef {
         for (String masterJournal : mContext.databaseList())
             if (masterJournal.startsWith(prefix))
                 mContext.deleteDatabase(masterJournal);
+        invalidateResultCache();
     }
 
 	/* Thread handling */
@@ -381,6 +495,30 @@ public abstract class SimplDb implements SimplDef {
                 sQuitter = null;
             handler.post(QUITTER);
         }
+        if (sBlocksQuitter.isEmpty())
+            quitNotifierThread();
+    }
+
+    private static synchronized boolean runOnNotifierThread(Runnable r) {
+        if (sNotifier != null && sNotifier.post(r))
+            return true;
+
+        HandlerThread handlerThread = new HandlerThread(TAG + ":notifier");
+        handlerThread.start();
+        sNotifier = new Handler(handlerThread.getLooper());
+
+        return sNotifier.post(r);
+    }
+
+    private static synchronized boolean isNotifierThread() {
+        return sNotifier != null && sNotifier.getLooper() == Looper.myLooper();
+    }
+
+    private static synchronized void quitNotifierThread() {
+        if (sNotifier != null) {
+            sNotifier.post(QUITTER);
+            sNotifier = null;
+        }
     }
 
     @Override
@@ -390,25 +528,139 @@ public abstract class SimplDb implements SimplDef {
         super.finalize();
     }
 
+	/* Lazy tables */
+
+    private void ensureTables(Class<? extends QueryDef> queryDef) {
+        for (Class<? extends TableDef> tableDef : SimplQuery.get(queryDef).getTables())
+            ensureTable(tableDef);
+    }
+
+    /**
+     * Creates a table defined as {@link Table#lazy()} if it does not exist yet.
+     * Tables of other databases and custom {@link SQLiteOpenHelper} implementations are ignored.
+     *
+     * @param tableDef to use
+     */
+    private void ensureTable(Class<? extends TableDef> tableDef) {
+        if (!loadTableSpec(tableDef).annotation.lazy() || !mTableDefs.contains(tableDef))
+            return;
+        synchronized (mLazyTables) {
+            if (mLazyTables.contains(tableDef))
+                return;
+        }
+
+        if (mSQLiteOpenHelper instanceof SQLiteOpenHelperImpl)
+            ((SQLiteOpenHelperImpl) mSQLiteOpenHelper).onCreateLazyTable(getWritableDatabase(), tableDef);
+        synchronized (mLazyTables) {
+            mLazyTables.add(tableDef);
+        }
+    }
+
+	/* Warm-up */
+
+    /**
+     * Loads the specs of all tables and {@code queryDefs} and opens the database on the worker thread.
+     * <p>
+     * Asynchronous queries requested afterwards run on the same worker and wait for the warm-up to finish.
+     * Called from a background thread, the warm-up runs on that thread.
+     * </p>
+     *
+     * @param queryDefs to load in advance
+     * @see #getStartupTrace()
+     */
+    @SafeVarargs
+    public final void warmUp(final Class<? extends QueryDef>... queryDefs) {
+        Runnable warmUp = new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                for (Class<? extends TableDef> tableDef : mTableDefs)
+                    loadTableSpec(tableDef);
+                trace(TRACE_TABLES, start);
+
+                start = System.nanoTime();
+                for (Class<? extends QueryDef> queryDef : queryDefs)
+                    SimplQuery.get(queryDef);
+                trace(TRACE_QUERIES, start);
+
+                start = System.nanoTime();
+                getWritableDatabase();
+                trace(TRACE_OPEN, start);
+            }
+        };
+
+        if (isUiThread() || isNotifierThread())
+            runOnWorkerThread(warmUp);
+        else
+            warmUp.run();
+    }
+
+    private void trace(String phase, long start) {
+        long duration = System.nanoTime() - start;
+        synchronized (mStartupTrace) {
+            mStartupTrace.put(phase, duration);
+        }
+        Log.v(TAG, name + ':' + phase + ' ' + duration / 1000 + "us");
+    }
+
+    /**
+     * The duration in nanoseconds of each startup phase finished so far.
+     * The constructor records {@link #TRACE_DATABASE}, {@link #warmUp(Class[])} records {@link #TRACE_TABLES},
+     * {@link #TRACE_QUERIES} and {@link #TRACE_OPEN}.
+     *
+     * @return a copy of the phases in order of their completion
+     */
+    public final Map<String, Long> getStartupTrace() {
+        synchronized (mStartupTrace) {
+            return new LinkedHashMap<>(mStartupTrace);
+        }
+    }
+
 	/* Table update handling */
 
     /**
      * Registers a {@link Observer} to be notified of any changes made to this database through this {@code SimplDb}.
      * The {@code observer} gets registered to any table of {@code queryDef}.
+     * <p>
+     * Since the filter applied to {@code queryDef} is unknown, the {@code observer} is notified of changes
+     * to any column of these tables.
+     * </p>
      *
      * @param observer to notify of changes
      * @param queryDef to be used in {@link Observer#onTableChanged(Class, SimplDb)}
+     * @see #registerObserver(Observer, Class, SimplQuery.Filter)
      * @see #unregisterObserver(Observer)
      * @see #unregisterObserver(Observer, Class)
      * @see #unregisterAllObservers()
      * @see #unregisterAllObservers(Class)
      */
     public final void registerObserver(Observer observer, Class<? extends QueryDef> queryDef) {
+        registerObserver(observer, queryDef, UNKNOWN_FILTER);
+    }
+
+    /**
+     * Registers a {@link Observer} to be notified of any changes made to this database through this {@code SimplDb}.
+     * The {@code observer} gets registered to any table of {@code queryDef}.
+     * <p>
+     * Updates only notify the {@code observer} if any of the updated columns is referenced
+     * by {@code queryDef} or {@code filter}.
+     * </p>
+     *
+     * @param observer to notify of changes
+     * @param queryDef to be used in {@link Observer#onTableChanged(Class, SimplDb)}
+     * @param filter   applied to {@code queryDef} or {@code null}
+     * @see SimplQuery#isAffectedBy(Collection, SimplQuery.Filter)
+     * @see #unregisterObserver(Observer)
+     * @see #unregisterObserver(Observer, Class)
+     * @see #unregisterAllObservers()
+     * @see #unregisterAllObservers(Class)
+     */
+    public final void registerObserver(Observer observer, Class<? extends QueryDef> queryDef, SimplQuery.Filter filter) {
         synchronized (sObservers) {
             SimplQuery query = SimplQuery.get(queryDef);
 
-            HashMap<Observer, HashSet<Class<? extends QueryDef>>> observers;
-            HashSet<Class<? extends QueryDef>> queries;
+            HashMap<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> observers;
+            HashMap<Class<? extends QueryDef>, SimplQuery.Filter> queries;
             for (Class<? extends TableDef> tableDef : query.getTables()) {
                 observers = sObservers.get(tableDef);
 
@@ -421,11 +673,11 @@ public abstract class SimplDb implements SimplDef {
                 }
 
                 if (queries == null) {
-                    queries = new HashSet<>();
+                    queries = new HashMap<>();
                     observers.put(observer, queries);
                 }
 
-                queries.add(queryDef);
+                queries.put(queryDef, filter);
             }
         }
     }
@@ -445,13 +697,16 @@ public abstract class SimplDb implements SimplDef {
         synchronized (sObservers) {
             SimplQuery query = SimplQuery.get(queryDef);
 
-            HashMap<Observer, HashSet<Class<? extends QueryDef>>> observers;
-            HashSet<Class<? extends QueryDef>> queries;
+            HashMap<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> observers;
+            HashMap<Class<? extends QueryDef>, SimplQuery.Filter> queries;
             for (Class<? extends TableDef> tableDef : query.getTables()) {
                 observers = sObservers.get(tableDef);
 
                 if (observers != null) {
                     queries = observers.get(observer);
+                    if (queries == null)
+                        continue;
+
                     queries.remove(queryDef);
 
                     if (queries.isEmpty())
@@ -491,18 +746,18 @@ public abstract class SimplDb implements SimplDef {
         synchronized (sObservers) {
             SimplQuery query = SimplQuery.get(queryDef);
 
-            HashMap<Observer, HashSet<Class<? extends QueryDef>>> observers;
-            HashSet<Class<? extends QueryDef>> queries;
+            HashMap<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> observers;
+            HashMap<Class<? extends QueryDef>, SimplQuery.Filter> queries;
             for (Class<? extends TableDef> tableDef : query.getTables()) {
                 observers = sObservers.get(tableDef);
 
                 if (observers != null)
-                    for (Entry<Observer, HashSet<Class<? extends QueryDef>>> e : observers.entrySet()) {
-                        queries = e.getValue();
+                    for (Iterator<HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> it = observers.values().iterator(); it.hasNext(); ) {
+                        queries = it.next();
                         queries.remove(queryDef);
 
                         if (queries.isEmpty())
-                            observers.remove(e.getKey());
+                            it.remove();
                     }
             }
         }
@@ -522,87 +777,640 @@ public abstract class SimplDb implements SimplDef {
         }
     }
 
-    private void sendTableChanged(Map<Observer, HashSet<Class<? extends QueryDef>>> observers) {
-        if (observers != null)
-            for (Entry<Observer, HashSet<Class<? extends QueryDef>>> entry : observers.entrySet()) {
-                Observer tableObserver = entry.getKey();
+    void sendTableChanged(Class<? extends TableDef> tableDef, Set<String> columns) {
+        sendTableChanged(Collections.<Class<? extends TableDef>, Set<String>>singletonMap(tableDef, columns));
+    }
+
+    private void sendTableChanged(final Map<Class<? extends TableDef>, Set<String>> changes) {
+        if (changes.isEmpty())
+            return;
+
+        sChangeCount.incrementAndGet();
+        ResultCache resultCache = getResultCache();
+        if (resultCache != null)
+            resultCache.invalidate(changes);
 
-                for (Class<? extends QueryDef> queryDef : entry.getValue())
-                    tableObserver.onTableChanged(queryDef, this);
+        runOnNotifierThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Entry<Observer, HashSet<Class<? extends QueryDef>>> entry : getAffectedObservers(changes).entrySet()) {
+                    Observer tableObserver = entry.getKey();
+
+                    for (Class<? extends QueryDef> queryDef : entry.getValue())
+                        tableObserver.onTableChanged(queryDef, SimplDb.this);
+                }
             }
+        });
     }
 
-    private void sendTableChanged(Class<? extends TableDef> tableDef) {
+    private static HashMap<Observer, HashSet<Class<? extends QueryDef>>> getAffectedObservers(Map<Class<? extends TableDef>, Set<String>> changes) {
+        HashMap<Observer, HashSet<Class<? extends QueryDef>>> affected = new HashMap<>();
+
         synchronized (sObservers) {
-            sendTableChanged(sObservers.get(tableDef));
+            HashMap<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> tableObservers;
+            for (Entry<Class<? extends TableDef>, Set<String>> change : changes.entrySet()) {
+                tableObservers = sObservers.get(change.getKey());
+
+                if (tableObservers != null)
+                    for (Entry<Observer, HashMap<Class<? extends QueryDef>, SimplQuery.Filter>> entry : tableObservers.entrySet()) {
+                        Observer tableObserver = entry.getKey();
+
+                        for (Entry<Class<? extends QueryDef>, SimplQuery.Filter> query : entry.getValue().entrySet())
+                            if (isAffected(query.getKey(), query.getValue(), change.getValue())) {
+                                HashSet<Class<? extends QueryDef>> queries = affected.get(tableObserver);
+                                if (queries == null) {
+                                    queries = new HashSet<>();
+                                    affected.put(tableObserver, queries);
+                                }
+
+                                queries.add(query.getKey());
+                            }
+                    }
+            }
+        }
+
+        return affected;
+    }
+
+    private static boolean isAffected(Class<? extends QueryDef> queryDef, SimplQuery.Filter filter, Set<String> columns) {
+        return filter == UNKNOWN_FILTER || SimplQuery.get(queryDef).isAffectedBy(columns, filter);
+    }
+
+    private static void addChange(Map<Class<? extends TableDef>, Set<String>> changes,
+                                  Class<? extends TableDef> tableDef, Set<String> columns) {
+        if (!changes.containsKey(tableDef)) {
+            changes.put(tableDef, columns == null ? null : new HashSet<>(columns));
+        } else {
+            Set<String> changed = changes.get(tableDef);
+            if (changed != null)
+                if (columns == null)
+                    changes.put(tableDef, null);
+                else
+                    changed.addAll(columns);
+        }
+    }
+
+    private static Set<String> getChangedColumns(ContentValues contentValues) {
+        HashSet<String> columns = new HashSet<>();
+        for (Entry<String, Object> value : contentValues.valueSet())
+            columns.add(value.getKey());
+        return columns;
+    }
+
+    /**
+     * {@code Observer} for changes to a table of the databases.
+     * <p>
+     * Observers are notified on a dedicated notifier thread, decoupled from the thread writing
+     * to the database. Notifications are delivered in the order the changes were made.
+     * </p>
+     */
+    public interface Observer {
+        /**
+         * @param queryDef to execute
+         * @param db       which changed
+         */
+        void onTableChanged(Class<? extends QueryDef> queryDef, SimplDb db);
+    }
+
+	/* Result cache handling */
+
+    /**
+     * Enables or disables the result cache of this database.
+     * <p>
+     * The cache stores the materialized results of {@link #query(Class, SimplQuery.Filter, SimplQuery.Callback)}
+     * keyed by the query and the contents of the filter. Results are removed from the cache as soon as a
+     * change made through any {@code SimplDb} of this database might affect them.
+     * Results larger than {@code maxBytes} are never cached.
+     * </p>
+     *
+     * @param maxEntries to keep or a value <= 0 to disable the cache
+     * @param maxBytes   estimated size of all results to keep
+     * @see #getResultCacheStats()
+     */
+    public final void setResultCacheSize(int maxEntries, long maxBytes) {
+        synchronized (sResultCaches) {
+            if (maxEntries > 0 && maxBytes > 0)
+                sResultCaches.put(getClass(), new ResultCache(maxEntries, maxBytes));
+            else
+                sResultCaches.remove(getClass());
+        }
+    }
+
+    /**
+     * @return the statistics of the result cache or {@code null} if disabled
+     * @see #setResultCacheSize(int, long)
+     */
+    public final CacheStats getResultCacheStats() {
+        ResultCache resultCache = getResultCache();
+        return resultCache != null ? resultCache.getStats() : null;
+    }
+
+    private ResultCache getResultCache() {
+        synchronized (sResultCaches) {
+            return sResultCaches.get(getClass());
+        }
+    }
+
+    private void invalidateResultCache() {
+        ResultCache resultCache = getResultCache();
+        if (resultCache != null)
+            resultCache.invalidate(null);
+    }
+
+    private Cursor query(Class<? extends QueryDef> queryDef, SimplQuery.Filter filter) {
+        ensureTables(queryDef);
+        SQLiteDatabase db = mSQLiteOpenHelper.getReadableDatabase();
+        ResultCache resultCache = getResultCache();
+        if (resultCache == null)
+            return SimplQuery.get(queryDef).exec(db, filter);
+
+        ResultCache.Key key = new ResultCache.Key(queryDef, filter);
+        Cursor cursor = resultCache.get(key);
+        if (cursor != null)
+            return cursor;
+
+        long generation = resultCache.getGeneration();
+        cursor = SimplQuery.get(queryDef).exec(db, filter);
+        ResultCache.Snapshot snapshot = ResultCache.Snapshot.from(cursor, resultCache.getMaxBytes());
+        if (snapshot == null) {
+            cursor.moveToPosition(-1);
+            return cursor;
+        }
+
+        cursor.close();
+        resultCache.put(key, snapshot, generation);
+        return snapshot.toCursor();
+    }
+
+	/* Database interaction */
+
+    /**
+     * Executes {@code queryDef} asynchronously.
+     * <p>
+     * Identical queries, with equal {@code queryDef} and filter contents, requested while another one is still
+     * pending or executing share a single execution. Each callback receives its own cursor then.
+     * </p>
+     *
+     * @param queryDef to execute
+     * @param filter   to use with the query
+     * @param callback to notify
+     * @see #setResultCacheSize(int, long)
+     */
+    public void query(Class<? extends QueryDef> queryDef, SimplQuery.Filter filter, SimplQuery.Callback callback) {
+        ResultCache.Key key = new ResultCache.Key(queryDef, filter);
+        PendingQuery pendingQuery;
+        synchronized (mPendingQueries) {
+            pendingQuery = mPendingQueries.get(key);
+            if (pendingQuery != null && pendingQuery.join(filter, callback))
+                return;
+
+            pendingQuery = new PendingQuery(key, filter, callback);
+            mPendingQueries.put(key, pendingQuery);
+        }
+
+        if (isUiThread() || isNotifierThread())
+            runOnWorkerThread(pendingQuery);
+        else
+            pendingQuery.run();
+    }
+
+    /**
+     * Identical queries requested while pending or executing are only executed once.
+     * Each caller receives its own cursor.
+     */
+    private final class PendingQuery implements Runnable {
+        private final ResultCache.Key mKey;
+        private final SimplQuery.Filter mFilter;
+        private final ArrayList<SimplQuery.Filter> mFilters = new ArrayList<>(2);
+        private final ArrayList<SimplQuery.Callback> mCallbacks = new ArrayList<>(2);
+        private boolean mStarted, mFinished;
+        private long mChangeCount;
+
+        PendingQuery(ResultCache.Key key, SimplQuery.Filter filter, SimplQuery.Callback callback) {
+            mKey = key;
+            mFilter = filter;
+            mFilters.add(filter);
+            mCallbacks.add(callback);
+        }
+
+        /**
+         * Must be called while holding the lock of {@code mPendingQueries}.
+         *
+         * @return false if the result of this query might not reflect all changes made until now
+         */
+        boolean join(SimplQuery.Filter filter, SimplQuery.Callback callback) {
+            if (mFinished || mStarted && mChangeCount != sChangeCount.get())
+                return false;
+
+            mFilters.add(filter);
+            mCallbacks.add(callback);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mPendingQueries) {
+                mStarted = true;
+                mChangeCount = sChangeCount.get();
+            }
+
+            Cursor cursor = null;
+            try {
+                cursor = query(mKey.queryDef, mFilter);
+            } finally {
+                synchronized (mPendingQueries) {
+                    mFinished = true;
+                    if (mPendingQueries.get(mKey) == this)
+                        mPendingQueries.remove(mKey);
+                }
+                if (cursor == null)
+                    retryJoined();
+            }
+
+            int count = mCallbacks.size();
+            if (count == 1) {
+                deliver(cursor, 0);
+            } else {
+                ResultCache.Snapshot snapshot = ResultCache.Snapshot.from(cursor, Long.MAX_VALUE);
+                cursor.close();
+                for (int i = 0; i < count; i++)
+                    deliver(snapshot.toCursor(), i);
+            }
+        }
+
+        /**
+         * Requests the query again for each joined callback after the execution failed.
+         */
+        private void retryJoined() {
+            for (int i = 1; i < mCallbacks.size(); i++) {
+                final SimplQuery.Filter filter = mFilters.get(i);
+                final SimplQuery.Callback callback = mCallbacks.get(i);
+                runOnWorkerThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        query(mKey.queryDef, filter, callback);
+                    }
+                });
+            }
+        }
+
+        private void deliver(final Cursor cursor, int i) {
+            final SimplQuery.Filter filter = mFilters.get(i);
+            final SimplQuery.Callback callback = mCallbacks.get(i);
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onQueryFinished(cursor, mKey.queryDef, filter, SimplDb.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Executes all {@code queries} back-to-back within a single transaction on the same connection.
+     * All results reflect the same committed state of the database and are delivered with a single callback.
+     * <p>
+     * The results are read completely within the transaction and bypass the result cache.
+     * Writers wait for the transaction, since SQLiteDatabase only provides transactions on its single writable
+     * connection.
+     * </p>
+     *
+     * @param queries  to execute mapped to the filter to use
+     * @param callback to notify
+     */
+    public void querySnapshot(final Map<Class<? extends QueryDef>, SimplQuery.Filter> queries, final SimplQuery.SnapshotCallback callback) {
+        if (isUiThread() || isNotifierThread()) {
+            runOnWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    querySnapshot(queries, callback);
+                }
+            });
+        } else {
+            final LinkedHashMap<Class<? extends QueryDef>, Cursor> cursors = new LinkedHashMap<>();
+            SQLiteDatabase db = mSQLiteOpenHelper.getReadableDatabase();
+            beginReadTransaction(db);
+            try {
+                for (Entry<Class<? extends QueryDef>, SimplQuery.Filter> query : queries.entrySet()) {
+                    ensureTables(query.getKey());
+                    Cursor cursor = SimplQuery.get(query.getKey()).exec(db, query.getValue());
+                    try {
+                        cursors.put(query.getKey(), ResultCache.Snapshot.from(cursor, Long.MAX_VALUE).toCursor());
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSnapshotFinished(cursors, SimplDb.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Executes all {@code queries} concurrently on separate read connections.
+     * <p>
+     * Queries only run in parallel if write-ahead logging is enabled for the database, since only then
+     * SQLite provides several read connections. At most {@link #getQueryParallelism()} queries run at the same time,
+     * so writers are never starved of connections. Otherwise the queries run one after the other on the worker.
+     * </p>
+     * <p>
+     * If any query fails, all cursors are closed and the first failure is reported to {@code callback}.
+     * </p>
+     *
+     * @param queries  to execute mapped to the filter to use
+     * @param callback to notify
+     * @see SQLiteDatabase#enableWriteAheadLogging()
+     */
+    public void queryAll(final Map<Class<? extends QueryDef>, SimplQuery.Filter> queries, final SimplQuery.QueryAllCallback callback) {
+        if (isUiThread() || isNotifierThread()) {
+            runOnWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    queryAll(queries, callback);
+                }
+            });
+        } else {
+            final long start = System.nanoTime();
+            final LinkedHashMap<Class<? extends QueryDef>, Cursor> cursors = new LinkedHashMap<>();
+            final LinkedHashMap<Class<? extends QueryDef>, Long> latencies = new LinkedHashMap<>();
+
+            LinkedHashMap<Class<? extends QueryDef>, Future<Cursor>> futures = new LinkedHashMap<>();
+            RuntimeException error = null;
+            try {
+                ExecutorService readers = isWriteAheadLoggingEnabled() ? getReaders() : null;
+                for (Entry<Class<? extends QueryDef>, SimplQuery.Filter> query : queries.entrySet()) {
+                    TimedQuery timedQuery = new TimedQuery(query.getKey(), query.getValue(), latencies);
+                    if (readers != null)
+                        futures.put(query.getKey(), readers.submit(timedQuery));
+                    else
+                        cursors.put(query.getKey(), timedQuery.call());
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                // every submitted query is awaited, so no cursor finishing late is leaked
+                boolean interrupted = false;
+                for (Entry<Class<? extends QueryDef>, Future<Cursor>> future : futures.entrySet())
+                    while (true)
+                        try {
+                            cursors.put(future.getKey(), future.getValue().get());
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        } catch (ExecutionException e) {
+                            if (error == null) {
+                                Throwable cause = e.getCause();
+                                error = cause instanceof RuntimeException ? (RuntimeException) cause : new SimplError(cause);
+                            }
+                            break;
+                        }
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+
+            if (error != null) {
+                for (Cursor cursor : cursors.values())
+                    cursor.close();
+                final RuntimeException failure = error;
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onQueryAllFailed(failure, SimplDb.this);
+                    }
+                });
+                return;
+            }
+
+            final long total = System.nanoTime() - start;
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onQueryAllFinished(cursors, latencies, total, SimplDb.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Defines the count of queries executed concurrently by {@link #queryAll(Map, SimplQuery.QueryAllCallback)}.
+     * The value should be less than the count of read connections of SQLite.
+     * <p>
+     * By default this returns 3.
+     * </p>
+     *
+     * @return the count of reader threads
+     */
+    protected int getQueryParallelism() {
+        return 3;
+    }
+
+    private boolean isWriteAheadLoggingEnabled() {
+        return isWriteAheadLoggingEnabled(mSQLiteOpenHelper.getReadableDatabase());
+    }
+
+    static boolean isWriteAheadLoggingEnabled(SQLiteDatabase db) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && isWriteAheadLoggingEnabledJellyBean(db);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static boolean isWriteAheadLoggingEnabledJellyBean(SQLiteDatabase db) {
+        return db.isWriteAheadLoggingEnabled();
+    }
+
+    private synchronized ExecutorService getReaders() {
+        if (mReaders == null) {
+            int parallelism = Math.max(1, getQueryParallelism());
+            ThreadPoolExecutor readers = new ThreadPoolExecutor(parallelism, parallelism, 10, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, TAG + ":reader");
+                }
+            });
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD)
+                allowCoreThreadTimeOut(readers);
+            mReaders = readers;
         }
+        return mReaders;
     }
 
-    private void sendTableChanged(Collection<Class<? extends TableDef>> tableDefs) {
-        WeakHashMap<Observer, HashSet<Class<? extends QueryDef>>> observers = new WeakHashMap<>();
-
-        synchronized (sObservers) {
-            HashMap<Observer, HashSet<Class<? extends QueryDef>>> tableObservers;
-            for (Class<? extends TableDef> tableDef : tableDefs) {
-                tableObservers = sObservers.get(tableDef);
-
-                if (tableObservers != null)
-                    for (Entry<Observer, HashSet<Class<? extends QueryDef>>> entry : tableObservers.entrySet()) {
-                        Observer tableObserver = entry.getKey();
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private static void allowCoreThreadTimeOut(ThreadPoolExecutor executor) {
+        executor.allowCoreThreadTimeOut(true);
+    }
 
-                        HashSet<Class<? extends QueryDef>> queries = observers.get(tableObserver);
-                        if (queries == null) {
-                            queries = new HashSet<>();
-                            observers.put(tableObserver, queries);
-                        }
+    /**
+     * Executes a query and fills its window on the calling thread.
+     */
+    private final class TimedQuery implements Callable<Cursor> {
+        private final Class<? extends QueryDef> mQueryDef;
+        private final SimplQuery.Filter mFilter;
+        private final Map<Class<? extends QueryDef>, Long> mLatencies;
+
+        TimedQuery(Class<? extends QueryDef> queryDef, SimplQuery.Filter filter, Map<Class<? extends QueryDef>, Long> latencies) {
+            mQueryDef = queryDef;
+            mFilter = filter;
+            mLatencies = latencies;
+        }
 
-                        for (Class<? extends QueryDef> queryDef : entry.getValue())
-                            queries.add(queryDef);
-                    }
+        @Override
+        public Cursor call() {
+            long start = System.nanoTime();
+            Cursor cursor = query(mQueryDef, mFilter);
+            cursor.getCount();
+            long latency = System.nanoTime() - start;
+            synchronized (mLatencies) {
+                mLatencies.put(mQueryDef, latency);
             }
+            return cursor;
         }
-
-        sendTableChanged(observers);
     }
 
     /**
-     * {@code Observer} for changes to a table of the databases.
+     * Begins an immediate transaction, which lets readers of databases with write-ahead logging continue.
+     * SQLiteDatabase maps every transaction, even a plain {@code BEGIN}, to the writable connection,
+     * so there is no deferred read transaction.
      */
-    public interface Observer {
-        /**
-         * @param queryDef to execute
-         * @param db       which changed
-         */
-        void onTableChanged(Class<? extends QueryDef> queryDef, SimplDb db);
+    static void beginReadTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+            beginTransactionNonExclusive(db);
+        else
+            db.beginTransaction();
     }
 
-	/* Database interaction */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void beginTransactionNonExclusive(SQLiteDatabase db) {
+        db.beginTransactionNonExclusive();
+    }
 
     /**
-     * @param queryDef to execute
+     * @param queryDef to count
      * @param filter   to use with the query
      * @param callback to notify
+     * @see SimplQuery#count(SQLiteDatabase, SimplQuery.Filter)
      */
-    public void query(final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter, final SimplQuery.Callback callback) {
-        if (isUiThread()) {
+    public void count(final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter, final SimplQuery.CountCallback callback) {
+        if (isUiThread() || isNotifierThread()) {
+            runOnWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    count(queryDef, filter, callback);
+                }
+            });
+        } else {
+            ensureTables(queryDef);
+            final long count = SimplQuery.get(queryDef).count(mSQLiteOpenHelper.getReadableDatabase(), filter);
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onCountFinished(count, queryDef, filter, SimplDb.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param queryDef to check
+     * @param filter   to use with the query
+     * @param callback to notify
+     * @see SimplQuery#exists(SQLiteDatabase, SimplQuery.Filter)
+     */
+    public void exists(final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter, final SimplQuery.ExistsCallback callback) {
+        if (isUiThread() || isNotifierThread()) {
             runOnWorkerThread(new Runnable() {
                 @Override
                 public void run() {
-                    query(queryDef, filter, callback);
+                    exists(queryDef, filter, callback);
                 }
             });
         } else {
-            final Cursor cursor = SimplQuery.get(queryDef).exec(mSQLiteOpenHelper.getReadableDatabase(), filter);
+            ensureTables(queryDef);
+            final boolean exists = SimplQuery.get(queryDef).exists(mSQLiteOpenHelper.getReadableDatabase(), filter);
             uiHandler.post(new Runnable() {
                 @Override
                 public void run() {
-                    callback.onQueryFinished(cursor, queryDef, filter, SimplDb.this);
+                    callback.onExistsFinished(exists, queryDef, filter, SimplDb.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param queryDef to read
+     * @param filter   to use with the query
+     * @param column   to read or {@code null} for the first column of the query
+     * @param callback to notify with the value of the first row or {@code null} if there is no row
+     * @see SimplQuery#longForQuery(SQLiteDatabase, SimplQuery.Filter, String)
+     */
+    public void longForQuery(final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter, final String column,
+                             final SimplQuery.ValueCallback<Long> callback) {
+        if (isUiThread() || isNotifierThread()) {
+            runOnWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    longForQuery(queryDef, filter, column, callback);
+                }
+            });
+        } else {
+            ensureTables(queryDef);
+            Long value;
+            try {
+                value = SimplQuery.get(queryDef).longForQuery(mSQLiteOpenHelper.getReadableDatabase(), filter, column);
+            } catch (SQLiteDoneException e) {
+                value = null;
+            }
+            postValue(value, queryDef, filter, callback);
+        }
+    }
+
+    /**
+     * @param queryDef to read
+     * @param filter   to use with the query
+     * @param column   to read or {@code null} for the first column of the query
+     * @param callback to notify with the value of the first row or {@code null} if there is no row or it is NULL
+     * @see SimplQuery#stringForQuery(SQLiteDatabase, SimplQuery.Filter, String)
+     */
+    public void stringForQuery(final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter, final String column,
+                               final SimplQuery.ValueCallback<String> callback) {
+        if (isUiThread() || isNotifierThread()) {
+            runOnWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    stringForQuery(queryDef, filter, column, callback);
                 }
             });
+        } else {
+            ensureTables(queryDef);
+            String value;
+            try {
+                value = SimplQuery.get(queryDef).stringForQuery(mSQLiteOpenHelper.getReadableDatabase(), filter, column);
+            } catch (SQLiteDoneException e) {
+                value = null;
+            }
+            postValue(value, queryDef, filter, callback);
         }
     }
 
+    private <T> void postValue(final T value, final Class<? extends QueryDef> queryDef, final SimplQuery.Filter filter,
+                               final SimplQuery.ValueCallback<T> callback) {
+        uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onValueFinished(value, queryDef, filter, SimplDb.this);
+            }
+        });
+    }
+
     private synchronized long insert(Class<? extends TableDef> tableDef, ContentValues contentValues) {
+        ensureTable(tableDef);
         return mSQLiteOpenHelper.getWritableDatabase().insert(getName(tableDef), null, contentValues);
     }
 
@@ -631,7 +1439,7 @@ public abstract class SimplDb implements SimplDef {
             final long rowId = insert(insert.tableDef, insert.contentValues);
 
             if (rowId >= 0)
-                sendTableChanged(insert.tableDef);
+                sendTableChanged(insert.tableDef, null);
 
             if (callback != null)
                 uiHandler.post(new Runnable() {
@@ -657,13 +1465,13 @@ public abstract class SimplDb implements SimplDef {
                     }
                 });
             } else {
-                HashSet<Class<? extends TableDef>> updated = new HashSet<>();
+                HashMap<Class<? extends TableDef>, Set<String>> updated = new HashMap<>();
 
                 for (final Insert insert : inserts) {
                     final long rowId = insert(insert.tableDef, insert.contentValues);
 
                     if (rowId >= 0)
-                        updated.add(insert.tableDef);
+                        addChange(updated, insert.tableDef, null);
 
                     if (callback != null)
                         uiHandler.post(new Runnable() {
@@ -714,10 +1522,32 @@ public abstract class SimplDb implements SimplDef {
         }
     }
 
-    private synchronized int update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, String[] whereArgs) {
+    private synchronized int update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, Object[] whereArgs) {
+        ensureTable(tableDef);
+        if (contentValues.size() == 0)
+            throw new IllegalArgumentException("Empty values");
+
+        StringBuilder sql = new StringBuilder(120);
+        sql.append("UPDATE OR ROLLBACK ").append(getName(tableDef)).append(" SET ");
+        Object[] args = new Object[contentValues.size()];
+        int i = 0;
+        for (Entry<String, Object> value : contentValues.valueSet()) {
+            sql.append(i > 0 ? "," : "").append(value.getKey()).append("=?");
+            args[i++] = value.getValue();
+        }
+        if (whereClause != null && whereClause.length() > 0)
+            sql.append(" WHERE ").append(whereClause);
+
         try {
-            return mSQLiteOpenHelper.getWritableDatabase()
-                    .updateWithOnConflict(getName(tableDef), contentValues, whereClause, whereArgs, SQLiteDatabase.CONFLICT_ROLLBACK);
+            SQLiteDatabase db = mSQLiteOpenHelper.getWritableDatabase();
+            SQLiteStatement statement = db.compileStatement(sql.toString());
+            try {
+                BindArgs.bind(statement, 1, args);
+                BindArgs.bind(statement, args.length + 1, whereArgs);
+                return BindArgs.executeUpdateDelete(db, statement);
+            } finally {
+                statement.close();
+            }
         } catch (SQLException e) {
             Log.e("SQLiteDatabase", "Error updating " + contentValues + " where " + whereClause + " " + Arrays.toString(whereArgs), e);
             return 0;
@@ -732,6 +1562,17 @@ public abstract class SimplDb implements SimplDef {
      * @param callback      to notify
      */
     public void update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, String[] whereArgs, Update.Callback callback) {
+        update(tableDef, contentValues, whereClause, (Object[]) whereArgs, callback);
+    }
+
+    /**
+     * @param tableDef      to operate on
+     * @param contentValues to update
+     * @param whereClause   of where to update
+     * @param whereArgs     to fill the ?s of {@code whereClause}, bound with their SQLite type
+     * @param callback      to notify
+     */
+    public void update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, Object[] whereArgs, Update.Callback callback) {
         update(new Update(tableDef, contentValues, whereClause, whereArgs), callback);
     }
 
@@ -751,7 +1592,7 @@ public abstract class SimplDb implements SimplDef {
             final int rowCount = update(update.tableDef, update.contentValues, update.whereClause, update.whereArgs);
 
             if (rowCount > 0)
-                sendTableChanged(update.tableDef);
+                sendTableChanged(update.tableDef, getChangedColumns(update.contentValues));
 
             if (callback != null)
                 uiHandler.post(new Runnable() {
@@ -777,13 +1618,13 @@ public abstract class SimplDb implements SimplDef {
                     }
                 });
             } else {
-                HashSet<Class<? extends TableDef>> updated = new HashSet<>();
+                HashMap<Class<? extends TableDef>, Set<String>> updated = new HashMap<>();
 
                 for (final Update update : updates) {
                     final int rowCount = update(update.tableDef, update.contentValues, update.whereClause, update.whereArgs);
 
                     if (rowCount >= 0)
-                        updated.add(update.tableDef);
+                        addChange(updated, update.tableDef, getChangedColumns(update.contentValues));
 
                     if (callback != null)
                         uiHandler.post(new Runnable() {
@@ -816,8 +1657,12 @@ public abstract class SimplDb implements SimplDef {
         public final String whereClause;
         /**
          * Arguments used within {@code whereClause}.
+         * The arguments are bound with their SQLite type.
+         * <p>
+         * This field used to be a {@code String[]}, so code reading it needs to be changed and recompiled.
+         * </p>
          */
-        public final String[] whereArgs;
+        public final Object[] whereArgs;
 
         /**
          * @param tableDef      to operate on
@@ -826,6 +1671,16 @@ public abstract class SimplDb implements SimplDef {
          * @param whereArgs     to fill the ?s of {@code whereClause}
          */
         public Update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, String... whereArgs) {
+            this(tableDef, contentValues, whereClause, (Object[]) whereArgs);
+        }
+
+        /**
+         * @param tableDef      to operate on
+         * @param contentValues to update
+         * @param whereClause   to match
+         * @param whereArgs     to fill the ?s of {@code whereClause}, bound with their SQLite type
+         */
+        public Update(Class<? extends TableDef> tableDef, ContentValues contentValues, String whereClause, Object... whereArgs) {
             this.tableDef = tableDef;
             if (contentValues != null)
                 this.contentValues.putAll(contentValues);
@@ -846,8 +1701,20 @@ public abstract class SimplDb implements SimplDef {
         }
     }
 
-    private synchronized int delete(Class<? extends TableDef> tableDef, String whereClause, String... whereArgs) {
-        return mSQLiteOpenHelper.getWritableDatabase().delete(getName(tableDef), whereClause, whereArgs);
+    private synchronized int delete(Class<? extends TableDef> tableDef, String whereClause, Object... whereArgs) {
+        ensureTable(tableDef);
+        String sql = "DELETE FROM " + getName(tableDef);
+        if (whereClause != null && whereClause.length() > 0)
+            sql += " WHERE " + whereClause;
+
+        SQLiteDatabase db = mSQLiteOpenHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            BindArgs.bind(statement, 1, whereArgs);
+            return BindArgs.executeUpdateDelete(db, statement);
+        } finally {
+            statement.close();
+        }
     }
 
     /**
@@ -856,7 +1723,7 @@ public abstract class SimplDb implements SimplDef {
      * @param callback to notify
      */
     public void delete(Class<? extends TableDef> tableDef, long id, Delete.Callback callback) {
-        delete(new Delete(tableDef, TableDef.WithID._ID + "=?", String.valueOf(id)), callback);
+        delete(new Delete(tableDef, TableDef.WithID._ID + "=?", id), callback);
     }
 
     /**
@@ -866,6 +1733,16 @@ public abstract class SimplDb implements SimplDef {
      * @param callback    to notify
      */
     public void delete(Class<? extends TableDef> tableDef, String whereClause, String[] whereArgs, Delete.Callback callback) {
+        delete(tableDef, whereClause, (Object[]) whereArgs, callback);
+    }
+
+    /**
+     * @param tableDef    to operate on
+     * @param whereClause of where to delete
+     * @param whereArgs   to fill the ?s of {@code whereClause}, bound with their SQLite type
+     * @param callback    to notify
+     */
+    public void delete(Class<? extends TableDef> tableDef, String whereClause, Object[] whereArgs, Delete.Callback callback) {
         delete(new Delete(tableDef, whereClause, whereArgs), callback);
     }
 
@@ -885,7 +1762,7 @@ public abstract class SimplDb implements SimplDef {
             final int rowCount = delete(delete.tableDef, delete.whereClause, delete.whereArgs);
 
             if (rowCount > 0)
-                sendTableChanged(delete.tableDef);
+                sendTableChanged(delete.tableDef, null);
 
             if (callback != null)
                 uiHandler.post(new Runnable() {
@@ -911,13 +1788,13 @@ public abstract class SimplDb implements SimplDef {
                     }
                 });
             } else {
-                HashSet<Class<? extends TableDef>> updated = new HashSet<>();
+                HashMap<Class<? extends TableDef>, Set<String>> updated = new HashMap<>();
 
                 for (final Delete delete : deletes) {
                     final int rowCount = delete(delete.tableDef, delete.whereClause, delete.whereArgs);
 
                     if (rowCount >= 0)
-                        updated.add(delete.tableDef);
+                        addChange(updated, delete.tableDef, null);
 
                     if (callback != null)
                         uiHandler.post(new Runnable() {
@@ -946,8 +1823,12 @@ public abstract class SimplDb implements SimplDef {
         public final String whereClause;
         /**
          * Arguments used within {@code whereClause}.
+         * The arguments are bound with their SQLite type.
+         * <p>
+         * This field used to be a {@code String[]}, so code reading it needs to be changed and recompiled.
+         * </p>
          */
-        public final String[] whereArgs;
+        public final Object[] whereArgs;
 
         /**
          * @param tableDef    to operate on
@@ -955,6 +1836,15 @@ public abstract class SimplDb implements SimplDef {
          * @param whereArgs   to fill the ?s of {@code whereClause}
          */
         public Delete(Class<? extends TableDef> tableDef, String whereClause, String... whereArgs) {
+            this(tableDef, whereClause, (Object[]) whereArgs);
+        }
+
+        /**
+         * @param tableDef    to operate on
+         * @param whereClause to match
+         * @param whereArgs   to fill the ?s of {@code whereClause}, bound with their SQLite type
+         */
+        public Delete(Class<? extends TableDef> tableDef, String whereClause, Object... whereArgs) {
             this.tableDef = tableDef;
             this.whereClause = whereClause;
             this.whereArgs = whereArgs;
@@ -994,6 +1884,7 @@ public abstract class SimplDb implements SimplDef {
      * {@link SQLiteOpenHelper#SQLiteOpenHelper(Context, String, CursorFactory, int)}.
      * <p>
      * By default this returns {@code null}.
+     * Queries with typed arguments bind them before calling this factory.
      * </p>
      *
      * @param context of the application
@@ -1039,6 +1930,69 @@ public abstract class SimplDb implements SimplDef {
     protected void afterUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
     }
 
+    /**
+     * Defines the count of rows copied per transaction when a table must be rebuilt on upgrade.
+     * <p>
+     * With a positive chunk size, rebuilt tables are copied after the upgrade when the database is opened.
+     * Each chunk is committed with its progress, so a killed process resumes the migration on the next open.
+     * Until then, the old table is still in place; {@link #afterUpgrade(SQLiteDatabase, int, int)}
+     * must not depend on the new schema of rebuilt tables.
+     * Tables without rowid are always copied at once.
+     * </p>
+     * <p>
+     * By default this returns 0 and tables are copied within the upgrade transaction.
+     * </p>
+     *
+     * @return the count of rows per chunk or 0 to disable chunked migrations
+     * @see #onMigrationProgress(String, long, long)
+     */
+    protected int getMigrationChunkSize() {
+        return 0;
+    }
+
+    /**
+     * Gets called before and after each chunk of a migration on the thread opening the database.
+     *
+     * @param table  being migrated
+     * @param copied count of rows
+     * @param total  count of rows
+     * @see #getMigrationChunkSize()
+     */
+    protected void onMigrationProgress(String table, long copied, long total) {
+    }
+
+    /**
+     * Defines the asset to install as prebuilt database if the database does not exist yet.
+     * <p>
+     * The annotation processor writes the script of {@link #getSchemaScript()} as
+     * {@code <package>/<name>.sql} to the class output. A build step applying this script, any seed data
+     * and {@code ANALYZE} to an SQLite file creates the asset.
+     * The asset is only installed if its version and the fingerprints of all tables match,
+     * otherwise the database is created as usual.
+     * Neither {@link #onCreate(SQLiteDatabase)} nor upgrades run for an installed asset.
+     * </p>
+     * <p>
+     * By default this returns {@code null}.
+     * </p>
+     *
+     * @return the path of the asset or {@code null} to always create the database
+     */
+    protected String getPrebuiltAsset() {
+        return null;
+    }
+
+    /**
+     * @return the statements creating the empty database including its version and fingerprints
+     * @see #getPrebuiltAsset()
+     */
+    public final String getSchemaScript() {
+        ArrayList<TableSpec> tableSpecs = new ArrayList<>(mTableDefs.size());
+        for (Class<? extends TableDef> tableDef : mTableDefs)
+            if (tableDef != null)
+                tableSpecs.add(loadTableSpec(tableDef));
+        return DatabaseSql.getScript(version, tableSpecs);
+    }
+
     /**
      * Implementation of {@code SQLiteOpenHelper} handling creation and upgrade of database tables.
      *
@@ -1046,8 +2000,11 @@ public abstract class SimplDb implements SimplDef {
      */
     protected class SQLiteOpenHelperImpl extends SQLiteOpenHelper {
         private static final String COPY_FORMAT = "INSERT INTO _%1$s (%2$s) SELECT %2$s FROM %1$s";
+        private static final String MIGRATION_TABLE = "_simpl_migration";
 
-        private final TableSql mTable;
+        private final HashSet<String> mMigrations = new HashSet<>();
+        private final CursorFactory mCursorFactory;
+        private boolean mPrebuiltChecked;
 
         /**
          * Creates a new {@code SQLiteOpenHelper} with {@link SimplDb#name} and {@link SimplDb#version}.
@@ -1056,8 +2013,12 @@ public abstract class SimplDb implements SimplDef {
          * @see #onCreateCursorFactory(Context)
          */
         protected SQLiteOpenHelperImpl(Context context) {
-            super(context.getApplicationContext(), name, onCreateCursorFactory(context), version);
-            mTable = new TableSql();
+            this(context, onCreateCursorFactory(context));
+        }
+
+        private SQLiteOpenHelperImpl(Context context, CursorFactory factory) {
+            super(context.getApplicationContext(), name, factory, version);
+            mCursorFactory = factory;
         }
 
         /**
@@ -1067,6 +2028,7 @@ public abstract class SimplDb implements SimplDef {
          */
         @Override
         public void onConfigure(SQLiteDatabase db) {
+            BindArgs.setCursorFactory(db, mCursorFactory);
             if (!db.isReadOnly())
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
                     db.setForeignKeyConstraintsEnabled(true);
@@ -1077,7 +2039,7 @@ public abstract class SimplDb implements SimplDef {
         }
 
         /**
-         * Creates all tables defined for this database.
+         * Creates all tables defined for this database, except lazy tables.
          *
          * @param db to create
          * @see Database#tables()
@@ -1085,16 +2047,23 @@ public abstract class SimplDb implements SimplDef {
          */
         @Override
         public final void onCreate(SQLiteDatabase db) {
+            createSchemaTable(db);
             for (Class<? extends TableDef> tableDef : mTableDefs)
-                if (tableDef != null)
+                if (tableDef != null && !loadTableSpec(tableDef).annotation.lazy()) {
                     onCreateTable(db, tableDef);
+                    onUpdateIndexes(db, tableDef);
+                    putFingerprint(db, tableDef);
+                }
 
             SimplDb.this.onCreate(db);
         }
 
         /**
          * Upgrades the current tables of the database, creates new tables and drops old tables.
-         * The "sqlite_sequence" table is ignored.
+         * The "sqlite_sequence" table and internal "_simpl_" tables are ignored.
+         * Pending migrations are finished first.
+         * Tables are skipped if the fingerprint of their definition did not change.
+         * Lazy tables are only upgraded if they exist.
          *
          * @param db         to upgrade
          * @param oldVersion of database
@@ -1103,24 +2072,40 @@ public abstract class SimplDb implements SimplDef {
          * @see SimplDb#afterUpgrade(SQLiteDatabase, int, int)
          * @see #onUpgradeTable(SQLiteDatabase, Class)
          * @see #onCreateTable(SQLiteDatabase, Class)
+         * @see #onUpdateIndexes(SQLiteDatabase, Class)
          * @see #onDropTable(SQLiteDatabase, String)
          */
         @Override
         public final void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            migrate(db);
             SimplDb.this.beforeUpgrade(db, oldVersion, newVersion);
 
             HashSet<String> tables = new HashSet<>(getTables(db));
+            createSchemaTable(db);
+            Map<String, String> fingerprints = getFingerprints(db);
 
             for (Class<? extends TableDef> tableDef : mTableDefs)
-                if (tableDef != null)
-                    if (tables.remove(getName(tableDef)))
+                if (tableDef != null) {
+                    String table = getName(tableDef);
+                    if (tables.remove(table)) {
+                        if (loadTableSpec(tableDef).fingerprint.equals(fingerprints.get(table)))
+                            continue;
                         onUpgradeTable(db, tableDef);
-                    else
+                    } else if (!loadTableSpec(tableDef).annotation.lazy()) {
                         onCreateTable(db, tableDef);
+                    } else {
+                        continue;
+                    }
+                    if (!mMigrations.contains(table))
+                        onUpdateIndexes(db, tableDef);
+                    putFingerprint(db, tableDef);
+                }
 
             for (String table : tables)
-                if (!"sqlite_sequence".equals(table))
+                if (!"sqlite_sequence".equals(table) && !table.startsWith("_simpl_")) {
                     onDropTable(db, table);
+                    db.delete(DatabaseSql.SCHEMA_TABLE, "name=?", new String[]{table});
+                }
 
             SimplDb.this.afterUpgrade(db, oldVersion, newVersion);
         }
@@ -1134,11 +2119,35 @@ public abstract class SimplDb implements SimplDef {
          * @see #onUpgrade(SQLiteDatabase, int, int)
          */
         protected void onCreateTable(SQLiteDatabase db, Class<? extends TableDef> tableDef) {
-            db.execSQL(mTable.build(loadTableSpec(tableDef), false));
+            db.execSQL(loadTableSpec(tableDef).sql);
+        }
+
+        /**
+         * Creates a table defined as {@link Table#lazy()} on its first use, if it does not exist yet.
+         *
+         * @param db       to modify
+         * @param tableDef to create
+         * @see #onCreateTable(SQLiteDatabase, Class)
+         */
+        protected void onCreateLazyTable(SQLiteDatabase db, Class<? extends TableDef> tableDef) {
+            db.beginTransaction();
+            try {
+                if (getSql(db, getName(tableDef)) == null) {
+                    createSchemaTable(db);
+                    onCreateTable(db, tableDef);
+                    onUpdateIndexes(db, tableDef);
+                    putFingerprint(db, tableDef);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
 
         /**
          * Upgrades an old table to a new table.
+         * Unchanged tables are skipped and added columns are appended with {@code ALTER TABLE} if possible.
+         * Any other table is rebuilt by copying all rows.
          * <a href="https://www.sqlite.org/lang_altertable.html#otheralter">suggestion</a>
          *
          * @param db       to modify
@@ -1146,22 +2155,240 @@ public abstract class SimplDb implements SimplDef {
          * @see #onUpgrade(SQLiteDatabase, int, int)
          */
         protected void onUpgradeTable(SQLiteDatabase db, Class<? extends TableDef> tableDef) {
-            db.execSQL(mTable.build(loadTableSpec(tableDef), true));
+            TableSpec tableSpec = loadTableSpec(tableDef);
+            String table = getName(tableDef);
+            String sql = getSql(db, table);
+            List<String> addedColumns = TableSql.getAddedColumns(tableSpec, sql);
+            if (addedColumns != null) {
+                for (String column : addedColumns)
+                    db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column);
+                return;
+            }
 
-            String table = mTable.getName();
+            TableSql.Definitions definitions = TableSql.Definitions.parse(sql);
+            boolean withoutRowid = definitions == null || definitions.isWithoutRowid();
+            db.execSQL(TableSql.getTemporarySql(tableSpec));
             HashSet<String> columns = new HashSet<>(getColumns(db, table));
-            columns.retainAll(mTable.getColumns());
+            columns.retainAll(Arrays.asList(tableSpec.columns));
             if (columns.size() > 0) {
                 StringBuilder sb = new StringBuilder();
                 for (String column : columns)
                     sb.append(',').append('"').append(column).append('"');
+
+                if (getMigrationChunkSize() > 0 && !withoutRowid) {
+                    db.execSQL("CREATE TABLE IF NOT EXISTS " + MIGRATION_TABLE
+                            + " (name TEXT PRIMARY KEY, columns TEXT NOT NULL, last_rowid INTEGER NOT NULL, copied INTEGER NOT NULL)");
+                    Object[] bindArgs = {table, sb.substring(1), Long.MIN_VALUE};
+                    db.execSQL("INSERT OR REPLACE INTO " + MIGRATION_TABLE + " VALUES (?,?,?,0)", bindArgs);
+                    mMigrations.add(table);
+                    return;
+                }
+
                 db.execSQL(String.format(Locale.UK, COPY_FORMAT, table, sb.substring(1)));
             }
 
+            replaceTable(db, table);
+        }
+
+        private void createSchemaTable(SQLiteDatabase db) {
+            db.execSQL(DatabaseSql.SCHEMA_TABLE_SQL);
+        }
+
+        private void putFingerprint(SQLiteDatabase db, Class<? extends TableDef> tableDef) {
+            Object[] bindArgs = {getName(tableDef), loadTableSpec(tableDef).fingerprint};
+            db.execSQL("INSERT OR REPLACE INTO " + DatabaseSql.SCHEMA_TABLE + " VALUES (?,?)", bindArgs);
+        }
+
+        private void replaceTable(SQLiteDatabase db, String table) {
             db.execSQL("DROP TABLE " + table);
             db.execSQL("ALTER TABLE _" + table + " RENAME TO " + table);
         }
 
+        /**
+         * Installs the prebuilt database before the database is opened the first time.
+         *
+         * @see SimplDb#getPrebuiltAsset()
+         */
+        @Override
+        public synchronized SQLiteDatabase getWritableDatabase() {
+            installPrebuilt();
+            return super.getWritableDatabase();
+        }
+
+        /**
+         * Installs the prebuilt database before the database is opened the first time.
+         *
+         * @see SimplDb#getPrebuiltAsset()
+         */
+        @Override
+        public synchronized SQLiteDatabase getReadableDatabase() {
+            installPrebuilt();
+            return super.getReadableDatabase();
+        }
+
+        private void installPrebuilt() {
+            if (mPrebuiltChecked)
+                return;
+            mPrebuiltChecked = true;
+
+            String asset = getPrebuiltAsset();
+            File file = mContext.getDatabasePath(name);
+            if (asset == null || file.exists())
+                return;
+
+            File prebuilt = new File(file.getPath() + ".prebuilt");
+            try {
+                File dir = prebuilt.getParentFile();
+                if (dir != null && !dir.exists() && !dir.mkdirs())
+                    throw new IOException("cannot create " + dir);
+                copy(mContext.getAssets().open(asset), prebuilt);
+                if (isPrebuiltValid(prebuilt) && prebuilt.renameTo(file)) {
+                    Log.v(TAG, name + ':' + version + " installed from " + asset);
+                    return;
+                }
+                Log.w(TAG, asset + " does not match " + name + ':' + version);
+            } catch (IOException | SQLException e) {
+                Log.w(TAG, asset + " not installed", e);
+            }
+            if (!prebuilt.delete())
+                Log.w(TAG, prebuilt + " not deleted");
+        }
+
+        private boolean isPrebuiltValid(File prebuilt) {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(prebuilt.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+            try {
+                HashMap<String, String> fingerprints = new HashMap<>();
+                for (Class<? extends TableDef> tableDef : mTableDefs)
+                    if (tableDef != null)
+                        fingerprints.put(getName(tableDef), loadTableSpec(tableDef).fingerprint);
+                return db.getVersion() == version && fingerprints.equals(getFingerprints(db));
+            } finally {
+                db.close();
+            }
+        }
+
+        /**
+         * Continues all pending migrations after the database was opened.
+         *
+         * @param db to migrate
+         * @see SimplDb#getMigrationChunkSize()
+         */
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            BindArgs.setCursorFactory(db, mCursorFactory);
+            if (!db.isReadOnly())
+                migrate(db);
+        }
+
+        @SuppressWarnings("TryFinallyCanBeTryWithResources")
+        private void migrate(SQLiteDatabase db) {
+            if (!getTables(db).contains(MIGRATION_TABLE))
+                return;
+
+            ArrayList<Object[]> migrations = new ArrayList<>();
+            String[] columns = {"name", "columns", "last_rowid", "copied"};
+            Cursor cursor = db.query(MIGRATION_TABLE, columns, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext())
+                    migrations.add(new Object[]{cursor.getString(0), cursor.getString(1),
+                            cursor.getLong(2), cursor.getLong(3)});
+            } finally {
+                cursor.close();
+            }
+
+            for (Object[] migration : migrations)
+                migrate(db, (String) migration[0], (String) migration[1], (Long) migration[2], (Long) migration[3]);
+            db.execSQL("DROP TABLE " + MIGRATION_TABLE);
+        }
+
+        /**
+         * Copies the rows of {@code table} by ranges of rowids, each chunk within its own transaction.
+         * The progress is stored with each chunk, so the migration resumes after the process was killed.
+         */
+        private void migrate(SQLiteDatabase db, String table, String columns, long lastRowId, long copied) {
+            SQLiteStatement count = db.compileStatement("SELECT count(*) FROM " + table + " WHERE rowid>?");
+            SQLiteStatement next = db.compileStatement("SELECT coalesce(max(rowid),?1) FROM (SELECT rowid FROM "
+                    + table + " WHERE rowid>?1 ORDER BY rowid LIMIT ?2)");
+            SQLiteStatement copy = db.compileStatement(String.format(Locale.UK, COPY_FORMAT, table, columns)
+                    + " WHERE rowid>? AND rowid<=?");
+            SQLiteStatement progress = db.compileStatement("UPDATE " + MIGRATION_TABLE
+                    + " SET last_rowid=?, copied=? WHERE name=?");
+            try {
+                count.bindLong(1, lastRowId);
+                long total = copied + count.simpleQueryForLong();
+                int chunkSize = Math.max(1, getMigrationChunkSize());
+                onMigrationProgress(table, copied, total);
+
+                while (copied < total) {
+                    db.beginTransaction();
+                    try {
+                        next.bindLong(1, lastRowId);
+                        next.bindLong(2, chunkSize);
+                        long rowId = next.simpleQueryForLong();
+                        if (rowId == lastRowId)
+                            total = copied;
+
+                        copy.bindLong(1, lastRowId);
+                        copy.bindLong(2, rowId);
+                        copied += BindArgs.executeUpdateDelete(db, copy);
+                        lastRowId = rowId;
+
+                        progress.bindLong(1, lastRowId);
+                        progress.bindLong(2, copied);
+                        progress.bindString(3, table);
+                        progress.execute();
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    onMigrationProgress(table, copied, total);
+                }
+            } finally {
+                count.close();
+                next.close();
+                copy.close();
+                progress.close();
+            }
+
+            db.beginTransaction();
+            try {
+                replaceTable(db, table);
+                db.delete(MIGRATION_TABLE, "name=?", new String[]{table});
+                mMigrations.remove(table);
+                for (Class<? extends TableDef> tableDef : mTableDefs)
+                    if (tableDef != null && table.equals(getName(tableDef)))
+                        onUpdateIndexes(db, tableDef);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        /**
+         * Creates the indexes defined for a table and drops any other index of the table created for an {@link Index}.
+         * Indexes matching their definition and indexes not named with {@link TableSql#INDEX_PREFIX} are kept.
+         *
+         * @param db       to modify
+         * @param tableDef to update the indexes of
+         * @see Index
+         * @see #onCreate(SQLiteDatabase)
+         * @see #onUpgrade(SQLiteDatabase, int, int)
+         */
+        protected void onUpdateIndexes(SQLiteDatabase db, Class<? extends TableDef> tableDef) {
+            HashMap<String, String> indexes = new HashMap<>(loadTableSpec(tableDef).indexSql);
+            for (Entry<String, String> index : getIndexes(db, getName(tableDef)).entrySet()) {
+                if (!index.getKey().startsWith(TableSql.INDEX_PREFIX))
+                    continue;
+                if (index.getValue().equals(indexes.get(index.getKey())))
+                    indexes.remove(index.getKey());
+                else
+                    db.execSQL("DROP INDEX " + quote(index.getKey()));
+            }
+
+            for (String sql : indexes.values())
+                db.execSQL(sql);
+        }
+
         /**
          * Drops an old tables not used anymore.
          *
@@ -1190,6 +2417,65 @@ public abstract class SimplDb implements SimplDef {
         }
     }
 
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    static Map<String, String> getFingerprints(SQLiteDatabase db) {
+        String[] columns = {"name", "fingerprint"};
+        Cursor cursor = db.query(DatabaseSql.SCHEMA_TABLE, columns, null, null, null, null, null);
+        try {
+            HashMap<String, String> fingerprints = new HashMap<>();
+            while (cursor.moveToNext())
+                fingerprints.put(cursor.getString(0), cursor.getString(1));
+            return fingerprints;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    private static void copy(InputStream in, File file) throws IOException {
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) > 0)
+                    out.write(buffer, 0, count);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    static String getSql(SQLiteDatabase db, String table) {
+        String[] columns = {"sql"};
+        String[] selectionArgs = {table};
+        Cursor cursor = db.query("sqlite_master", columns, "type='table' AND name=?", selectionArgs, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SuppressWarnings("TryFinallyCanBeTryWithResources")
+    static Map<String, String> getIndexes(SQLiteDatabase db, String table) {
+        String[] columns = {"name", "sql"};
+        String[] selectionArgs = {table};
+        Cursor cursor = db.query("sqlite_master", columns, "type='index' AND tbl_name=? AND sql NOT NULL",
+                selectionArgs, null, null, null);
+        try {
+            HashMap<String, String> indexes = new HashMap<>();
+            while (cursor.moveToNext())
+                indexes.put(cursor.getString(0), cursor.getString(1));
+            return indexes;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @SuppressWarnings("TryFinallyCanBeTryWithResources")
     static Collection<String> getColumns(SQLiteDatabase db, String table) {
         Cursor cursor = db.query(table, null, null, null, null, null, null, "0");
@@ -16,9 +16,11 @@
 
 package simpl.db;
 
+import android.annotation.TargetApi;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,15 +28,22 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
 
+import simpl.db.api.Column;
+import simpl.db.api.ColumnType;
 import simpl.db.api.Join;
 import simpl.db.api.JoinType;
 import simpl.db.api.Query;
 import simpl.db.api.QueryDef;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
+import simpl.db.internal.SimplSql;
 import simpl.db.spec.QuerySpec;
+import simpl.db.spec.TableSpec;
 
 /**
  * {@code SimplQuery} is the base class for all simplDb queries.
@@ -45,6 +54,13 @@ import simpl.db.spec.QuerySpec;
  */
 public class SimplQuery {
     private static final String QUERY_SPEC = "$$QuerySpec";
+    private static final String ROWID = "_rowid_";
+    private static final Object IN_LOCK = new Object();
+    private static final Pattern PLAIN_COLUMN = Pattern.compile("\\s*(\\w+\\.)?(\\w+|\\*)(\\s+(AS\\s+)?\\w+)?\\s*",
+            Pattern.CASE_INSENSITIVE);
+    private static final int SQL_CACHE_SIZE = 16;
+    private static final int CHUNK_SIZE = 256;
+    private static final int STATEMENT_CACHE_SIZE = 8;
     private static final HashMap<Class<? extends QueryDef>, SimplQuery> I = new HashMap<>();
 
     /**
@@ -62,7 +78,7 @@ public class SimplQuery {
         if (simplQuery == null) {
             QuerySpec spec = loadQuerySpec(queryDef);
             if (spec != null) {
-                simplQuery = new SimplQuery(spec.annotation, spec.join);
+                simplQuery = new SimplQuery(spec);
             } else if (TableDef.class.isAssignableFrom(queryDef)) {
                 simplQuery = new SimplQuery(queryDef.asSubclass(TableDef.class));
             } else try {
@@ -78,15 +94,12 @@ public class SimplQuery {
     }
 
     private static QuerySpec loadQuerySpec(Class<? extends QueryDef> queryDef) {
-        String querySpecName = queryDef.getName() + QUERY_SPEC;
         try {
-            return (QuerySpec) Class.forName(querySpecName).newInstance();
+            QuerySpec spec = (QuerySpec) SimplDb.newSpec(queryDef);
+            if (spec != null)
+                return spec;
         } catch (ClassCastException e) {
-            throw new SimplError(querySpecName + " must extend " + QuerySpec.class);
-        } catch (ClassNotFoundException e) {
-            Log.i(SimplDb.TAG, querySpecName + " not found");
-        } catch (Exception e) {
-            Log.e(SimplDb.TAG, "error", e);
+            throw new SimplError(queryDef.getName() + QUERY_SPEC + " must extend " + QuerySpec.class);
         }
 
         Query query = queryDef.getAnnotation(Query.class);
@@ -102,6 +115,10 @@ public class SimplQuery {
     private final String mTable;
     private final String[] mColumns;
     private final Filter mFilter = new Filter();
+    private HashSet<String> mReferences;
+    private final SqlCache mSqlCache = new SqlCache();
+    private final StatementCache mStatementCache = new StatementCache();
+    private String mSql;
 
     /**
      * @param table   name to compile the query against
@@ -127,41 +144,41 @@ public class SimplQuery {
         mFilter.setFrom(filter);
     }
 
-    private SimplQuery(Query query, Join join) {
-        Class<? extends TableDef> tableDef = query.table();
-        if (!tableDef.isAnnotationPresent(Table.class))
-            throw new SimplError(tableDef, Table.class);
-
-        ArrayList<Class<? extends TableDef>> tableDefs = new ArrayList<>(2);
-        tableDefs.add(tableDef);
-        mTableDefs = Collections.unmodifiableCollection(tableDefs);
-
-        String tableName = SimplDb.getName(tableDef);
-        StringBuilder table = new StringBuilder(tableName);
-        HashSet<String> columns = new HashSet<>(Arrays.asList(query.columns()));
-        if (join != null) {
-            tableDef = join.table();
+    private SimplQuery(QuerySpec spec) {
+        Query query = spec.annotation;
+        if (spec.sql != null) {
+            mTableDefs = Collections.unmodifiableCollection(spec.tables);
+            mTable = spec.table;
+            mColumns = spec.columns;
+            mSql = spec.sql;
+        } else {
+            Class<? extends TableDef> tableDef = query.table();
             if (!tableDef.isAnnotationPresent(Table.class))
                 throw new SimplError(tableDef, Table.class);
+
+            ArrayList<Class<? extends TableDef>> tableDefs = new ArrayList<>(2);
             tableDefs.add(tableDef);
+            mTableDefs = Collections.unmodifiableCollection(tableDefs);
 
-            if (join.natural())
-                table.append(" NATURAL");
+            String table = SimplDb.getName(tableDef);
+            HashSet<String> columns = new HashSet<>(Arrays.asList(query.columns()));
+            Join join = spec.join;
+            if (join != null) {
+                tableDef = join.table();
+                if (!tableDef.isAnnotationPresent(Table.class))
+                    throw new SimplError(tableDef, Table.class);
+                tableDefs.add(tableDef);
 
-            if (join.type() != JoinType.DEFAULT)
-                table.append(' ').append(join.type());
-            table.append(" JOIN ");
-            table.append(SimplDb.getName(tableDef));
+                String type = join.type() != JoinType.DEFAULT ? join.type().toString() : null;
+                table = SimplSql.join(table, SimplDb.getName(tableDef), type, join.natural(), join.on());
 
-            String on = String.format(Locale.US, join.on(), tableName, SimplDb.getName(tableDef));
-            table.append(" ON (").append(on).append(')');
+                columns.addAll(Arrays.asList(join.columns()));
+            }
 
-            columns.addAll(Arrays.asList(join.columns()));
+            mTable = table;
+            mColumns = columns.toArray(new String[columns.size()]);
         }
 
-        mTable = table.toString();
-        mColumns = columns.toArray(new String[columns.size()]);
-
         mFilter.setSelection(query.selection(), query.selectionArgs());
         mFilter.setGroupBy(query.groupBy());
         mFilter.setOrderBy(query.orderBy());
@@ -185,13 +202,106 @@ public class SimplQuery {
         return mTableDefs;
     }
 
+    /**
+     * Checks if a change to {@code columns} might affect the result of this query.
+     * This is a conservative check against all identifiers referenced by the query and the filter.
+     *
+     * @param columns changed or {@code null} for any column
+     * @param filter  to apply
+     * @return false if the result of this query cannot be affected
+     */
+    public boolean isAffectedBy(Collection<String> columns, Filter filter) {
+        if (columns == null)
+            return true;
+
+        Collection<String> references = getReferences(filter);
+        if (references == null)
+            return true;
+
+        for (String column : columns)
+            if (references.contains(normalize(column)))
+                return true;
+        return false;
+    }
+
+    Collection<String> getReferences(Filter filter) {
+        HashSet<String> references = getReferences();
+        if (references == null || filter == null)
+            return references;
+
+        references = new HashSet<>(references);
+        addReferences(references, filter.getSelection(null));
+        addReferences(references, filter.getGroupBy(null));
+        addReferences(references, filter.getHaving(null));
+        addReferences(references, filter.getOrderBy(null));
+        return references;
+    }
+
+    private synchronized HashSet<String> getReferences() {
+        if (mReferences == null && mColumns != null) {
+            HashSet<String> references = new HashSet<>();
+            for (String column : mColumns)
+                if (column.indexOf('*') >= 0)
+                    return null;
+                else
+                    addReferences(references, column);
+
+            addReferences(references, mTable);
+            addReferences(references, mFilter.getSelection(null));
+            addReferences(references, mFilter.getGroupBy(null));
+            addReferences(references, mFilter.getHaving(null));
+            addReferences(references, mFilter.getOrderBy(null));
+            mReferences = references;
+        }
+        return mReferences;
+    }
+
+    private static void addReferences(HashSet<String> references, String sql) {
+        if (sql == null)
+            return;
+
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '"' || c == '`' || c == '[') {
+                int end = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                if (end < 0)
+                    end = length;
+                references.add(sql.substring(i + 1, end).toLowerCase(Locale.US));
+                i = end;
+            } else if (c == '\'') {
+                int end = sql.indexOf(c, i + 1);
+                i = end < 0 ? length : end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i + 1 < length && isIdentifierPart(sql.charAt(i + 1)))
+                    i++;
+                references.add(sql.substring(start, i + 1).toLowerCase(Locale.US));
+            } else if (Character.isDigit(c)) {
+                while (i + 1 < length && isIdentifierPart(sql.charAt(i + 1)))
+                    i++;
+            }
+        }
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String normalize(String column) {
+        int length = column.length();
+        if (length > 1 && column.charAt(0) == '"' && column.charAt(length - 1) == '"')
+            column = column.substring(1, length - 1);
+        return column.toLowerCase(Locale.US);
+    }
+
     /**
      * Wraps {@link #exec(SQLiteDatabase, Filter)} for convenience.
      *
      * @param db     to query
      * @param filter to apply
      * @return a cursor positioned before the first entry
-     * @see SQLiteDatabase#query(String, String[], String, String[], String, String, String, String)
+     * @see SQLiteDatabase#rawQuery(String, String[])
      */
     public Cursor exec(SimplDb db, Filter filter) {
         return exec(db.getReadableDatabase(), filter);
@@ -203,12 +313,586 @@ public class SimplQuery {
      * @param db     to query
      * @param filter to apply
      * @return a cursor positioned before the first entry
-     * @see SQLiteDatabase#query(String, String[], String, String[], String, String, String, String)
+     * @see SQLiteDatabase#rawQuery(String, String[])
+     * @see SQLiteDatabase#rawQueryWithFactory(SQLiteDatabase.CursorFactory, String, String[], String)
      */
     public Cursor exec(SQLiteDatabase db, Filter filter) {
-        return db.query(mTable, mColumns, mFilter.getSelection(filter), mFilter.getSelectionArgs(filter),
-                mFilter.getGroupBy(filter), mFilter.getHaving(filter), mFilter.getOrderBy(filter),
-                mFilter.getLimit(filter));
+        return exec(db, getSql(filter), mFilter.getSelectionArgs(filter), filter);
+    }
+
+    private static Cursor exec(SQLiteDatabase db, String sql, Object[] selectionArgs, Filter filter) {
+        Object[] inValues = filter != null ? filter.mInValues : null;
+        if (inValues == null)
+            return exec(db, sql, selectionArgs);
+
+        synchronized (IN_LOCK) {
+            boolean transaction = beginIn(db, inValues);
+            try {
+                Cursor cursor = exec(db, sql, selectionArgs);
+                try {
+                    Cursor snapshot = ResultCache.Snapshot.from(cursor, Long.MAX_VALUE).toCursor();
+                    if (transaction)
+                        db.setTransactionSuccessful();
+                    return snapshot;
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                if (transaction)
+                    db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Fills the temporary table of large IN lists within a short transaction.
+     * Without write-ahead logging the only connection keeps the table, so the query runs without a transaction.
+     * Otherwise the transaction is kept open to stay on the connection of the table until the query finished;
+     * this connection is the only writable one anyway.
+     * Callers hold {@link #IN_LOCK} until the query finished.
+     *
+     * @return if the transaction is still open
+     */
+    private static boolean beginIn(SQLiteDatabase db, Object[] inValues) {
+        boolean keep = SimplDb.isWriteAheadLoggingEnabled(db);
+        boolean filled = false;
+        SimplDb.beginReadTransaction(db);
+        try {
+            db.execSQL("CREATE TEMP TABLE IF NOT EXISTS " + Filter.IN_TABLE + " (v PRIMARY KEY)");
+            db.execSQL("DELETE FROM " + Filter.IN_TABLE);
+            SQLiteStatement statement = db.compileStatement("INSERT OR IGNORE INTO " + Filter.IN_TABLE + " VALUES (?)");
+            try {
+                for (Object value : inValues) {
+                    BindArgs.bind(statement, 1, value);
+                    statement.executeInsert();
+                }
+            } finally {
+                statement.close();
+            }
+            filled = true;
+        } finally {
+            if (!filled || !keep) {
+                if (filled)
+                    db.setTransactionSuccessful();
+                db.endTransaction();
+            }
+        }
+        return keep;
+    }
+
+    private static Cursor exec(SQLiteDatabase db, String sql, Object[] selectionArgs) {
+        String[] stringArgs = BindArgs.toStrings(selectionArgs);
+        if (selectionArgs == null || stringArgs != null)
+            return db.rawQuery(sql, stringArgs);
+        return db.rawQueryWithFactory(new BindArgs.Factory(db, selectionArgs), sql, null, null);
+    }
+
+    /**
+     * Wraps {@link #exec(SQLiteDatabase, Filter, Page)} for convenience.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @param page   to return
+     * @return a cursor positioned before the first entry
+     * @see #next(Cursor, Filter, Page)
+     */
+    public Cursor exec(SimplDb db, Filter filter, Page page) {
+        return exec(db.getReadableDatabase(), filter, page);
+    }
+
+    /**
+     * Executes this query with {@code filter} applied and returns a single {@code page} of the result.
+     * The query must be ordered by a unique combination of not null keys, which are also returned as columns.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @param page   to return
+     * @return a cursor positioned before the first entry
+     * @throws SimplError if the query is not ordered
+     * @see #next(Cursor, Filter, Page)
+     */
+    public Cursor exec(SQLiteDatabase db, Filter filter, Page page) {
+        return exec(db, getPage(filter, page));
+    }
+
+    /**
+     * Wraps {@link #forEach(SQLiteDatabase, Filter, int, RowVisitor)} for convenience.
+     *
+     * @param db      to query
+     * @param filter  to apply
+     * @param visitor to call for each row
+     * @return the count of rows visited
+     */
+    public int forEach(SimplDb db, Filter filter, RowVisitor visitor) {
+        return forEach(db.getReadableDatabase(), filter, CHUNK_SIZE, visitor);
+    }
+
+    /**
+     * Executes this query with {@code filter} applied and streams the result to {@code visitor}.
+     * <p>
+     * The result is read in chunks of {@code chunkSize} rows, so the time to the first row and the memory used
+     * do not depend on the size of the result. Each chunk continues after the sort keys of the last row,
+     * like {@link Page}.
+     * Queries of a single rowid table are ordered by {@code _rowid_} after any ORDER BY clause
+     * and also return the column {@code _rowid_}.
+     * Other queries must be ordered by a unique combination of not null keys, which are also returned as columns.
+     * </p>
+     * <p>
+     * The chunks are not read within a single transaction.
+     * </p>
+     *
+     * @param db        to query
+     * @param filter    to apply
+     * @param chunkSize count of rows to read at once
+     * @param visitor   to call for each row
+     * @return the count of rows visited
+     * @throws SimplError if a query without rowid is not ordered or its order is not unique
+     */
+    public int forEach(SQLiteDatabase db, Filter filter, int chunkSize, RowVisitor visitor) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        String limit = mFilter.getLimit(filter);
+        long remaining = limit != null ? Long.parseLong(limit) : Long.MAX_VALUE;
+        String orderBy = mFilter.getOrderBy(filter);
+        boolean rowid = hasRowid(filter);
+        if (rowid)
+            orderBy = orderBy != null ? orderBy + ", " + ROWID : ROWID;
+        else if (orderBy == null)
+            throw new SimplError("forEach requires an orderBy clause for queries without rowid");
+        OrderBy keys = new OrderBy(orderBy);
+        String[] columns = rowid ? getColumnsWithRowid() : mColumns;
+
+        Filter query = new Filter(filter != null ? filter.id : 0);
+        query.setFrom(filter);
+        query.setOrderBy(orderBy);
+
+        Object[] last = null;
+        int count = 0;
+        while (remaining > 0) {
+            int size = (int) Math.min(chunkSize, remaining);
+            Filter chunk = new Page(size, last).apply(mFilter, query, keys);
+            if (!rowid)
+                chunk.setLimit(size + 1);
+            Cursor cursor = exec(db, new Shape(mFilter, chunk).build(mTable, columns),
+                    mFilter.getSelectionArgs(chunk), chunk);
+
+            try {
+                int rows = 0;
+                while (rows < size && cursor.moveToNext()) {
+                    rows++;
+                    count++;
+                    if (!visitor.onRow(cursor))
+                        return count;
+                }
+
+                if (rows < size)
+                    break;
+                cursor.moveToPosition(rows - 1);
+                last = readKeys(cursor, keys);
+                if (cursor.moveToNext() && Arrays.equals(last, readKeys(cursor, keys)))
+                    throw new SimplError("forEach requires a unique orderBy clause: " + orderBy);
+                remaining -= rows;
+            } finally {
+                cursor.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return if the rows of this query can be identified by the rowid of its single table
+     */
+    private boolean hasRowid(Filter filter) {
+        if (mTableDefs.size() != 1 || mFilter.getGroupBy(filter) != null)
+            return false;
+        Class<? extends TableDef> tableDef = mTableDefs.iterator().next();
+        if (!mTable.equals(SimplDb.getName(tableDef)))
+            return false;
+        if (mColumns != null)
+            for (String column : mColumns)
+                if (column.trim().toUpperCase(Locale.US).startsWith("DISTINCT"))
+                    return false;
+        return !SimplDb.loadTableSpec(tableDef).sql.endsWith(" WITHOUT ROWID");
+    }
+
+    private String[] getColumnsWithRowid() {
+        String[] columns = mColumns != null ? mColumns : new String[]{"*"};
+        columns = Arrays.copyOf(columns, columns.length + 1);
+        columns[columns.length - 1] = ROWID + " AS " + ROWID;
+        return columns;
+    }
+
+    /**
+     * Wraps {@link #readColumns(SQLiteDatabase, Filter)} for convenience.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return all columns of the result
+     */
+    public Columns readColumns(SimplDb db, Filter filter) {
+        return readColumns(db.getReadableDatabase(), filter);
+    }
+
+    /**
+     * Executes this query with {@code filter} applied and reads the result column by column
+     * into primitive arrays.
+     * <p>
+     * The type of each column is taken from its {@link Column} definition if the column is a plain
+     * column of a queried table. Otherwise the type of the first value is used.
+     * </p>
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return all columns of the result
+     */
+    public Columns readColumns(SQLiteDatabase db, Filter filter) {
+        Cursor cursor = exec(db, filter);
+        try {
+            String[] names = cursor.getColumnNames();
+            int[] types = new int[names.length];
+            for (int i = 0; i < names.length; i++)
+                types[i] = getDeclaredType(names[i]);
+            return Columns.read(cursor, types);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getDeclaredType(String column) {
+        column = normalize(column.substring(column.lastIndexOf('.') + 1));
+        for (Class<? extends TableDef> tableDef : mTableDefs) {
+            TableSpec tableSpec = SimplDb.loadTableSpec(tableDef);
+            for (int i = 0; i < tableSpec.columns.length; i++)
+                if (tableSpec.columns[i].equals(column))
+                    return Columns.getType(tableSpec.types[i]);
+        }
+        return Columns.TYPE_UNKNOWN;
+    }
+
+    /**
+     * Wraps {@link #count(SQLiteDatabase, Filter)} for convenience.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return the count of rows
+     */
+    public long count(SimplDb db, Filter filter) {
+        return count(db.getReadableDatabase(), filter);
+    }
+
+    /**
+     * Counts the rows of this query with {@code filter} applied without creating a cursor.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return the count of rows
+     */
+    public long count(SQLiteDatabase db, Filter filter) {
+        return simpleQueryForLong(db, getCountSql(filter), filter);
+    }
+
+    /**
+     * Wraps {@link #exists(SQLiteDatabase, Filter)} for convenience.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return true if there is any row
+     */
+    public boolean exists(SimplDb db, Filter filter) {
+        return exists(db.getReadableDatabase(), filter);
+    }
+
+    /**
+     * Checks if this query with {@code filter} applied returns any row without creating a cursor.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @return true if there is any row
+     */
+    public boolean exists(SQLiteDatabase db, Filter filter) {
+        return simpleQueryForLong(db, getExistsSql(filter), filter) != 0;
+    }
+
+    /**
+     * Reads {@code column} of the first row of this query with {@code filter} applied without creating a cursor.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @param column to read or {@code null} for the first column of this query
+     * @return the value of the first row
+     * @throws android.database.sqlite.SQLiteDoneException if there is no row
+     */
+    public long longForQuery(SQLiteDatabase db, Filter filter, String column) {
+        return simpleQueryForLong(db, getColumnSql(filter, column), filter);
+    }
+
+    /**
+     * Reads {@code column} of the first row of this query with {@code filter} applied without creating a cursor.
+     *
+     * @param db     to query
+     * @param filter to apply
+     * @param column to read or {@code null} for the first column of this query
+     * @return the value of the first row
+     * @throws android.database.sqlite.SQLiteDoneException if there is no row
+     */
+    public String stringForQuery(SQLiteDatabase db, Filter filter, String column) {
+        String sql = getColumnSql(filter, column);
+        Object[] inValues = filter != null ? filter.mInValues : null;
+        if (inValues == null)
+            synchronized (mStatementCache) {
+                return mStatementCache.get(db, sql, mFilter.getSelectionArgs(filter)).simpleQueryForString();
+            }
+
+        synchronized (IN_LOCK) {
+            boolean transaction = beginIn(db, inValues);
+            try {
+                String value;
+                synchronized (mStatementCache) {
+                    value = mStatementCache.get(db, sql, mFilter.getSelectionArgs(filter)).simpleQueryForString();
+                }
+                if (transaction)
+                    db.setTransactionSuccessful();
+                return value;
+            } finally {
+                if (transaction)
+                    db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * @return the statistics of the statement cache of this query
+     */
+    public CacheStats getStatementCacheStats() {
+        synchronized (mStatementCache) {
+            return new CacheStats(mStatementCache.hitCount, mStatementCache.missCount,
+                    mStatementCache.evictionCount, mStatementCache.size());
+        }
+    }
+
+    private long simpleQueryForLong(SQLiteDatabase db, String sql, Filter filter) {
+        Object[] inValues = filter != null ? filter.mInValues : null;
+        if (inValues == null)
+            synchronized (mStatementCache) {
+                return mStatementCache.get(db, sql, mFilter.getSelectionArgs(filter)).simpleQueryForLong();
+            }
+
+        synchronized (IN_LOCK) {
+            boolean transaction = beginIn(db, inValues);
+            try {
+                long value;
+                synchronized (mStatementCache) {
+                    value = mStatementCache.get(db, sql, mFilter.getSelectionArgs(filter)).simpleQueryForLong();
+                }
+                if (transaction)
+                    db.setTransactionSuccessful();
+                return value;
+            } finally {
+                if (transaction)
+                    db.endTransaction();
+            }
+        }
+    }
+
+    String getCountSql(Filter filter) {
+        if (hasPlainColumns() && mFilter.getGroupBy(filter) == null && mFilter.getHaving(filter) == null
+                && mFilter.getLimit(filter) == null)
+            return SimplSql.select(mTable, new String[]{"count(*)"}, mFilter.getSelection(filter),
+                    null, null, null, null);
+        return "SELECT count(*) FROM (" + getSql(filter) + ")";
+    }
+
+    String getExistsSql(Filter filter) {
+        if (hasPlainColumns())
+            return "SELECT EXISTS (" + SimplSql.select(mTable, new String[]{"1"}, mFilter.getSelection(filter),
+                    mFilter.getGroupBy(filter), mFilter.getHaving(filter), null, null) + ")";
+        return "SELECT EXISTS (" + getSql(filter) + ")";
+    }
+
+    /**
+     * @return if the columns of this query neither aggregate nor remove rows,
+     * so they can be replaced without changing the count of rows
+     */
+    private boolean hasPlainColumns() {
+        if (mColumns != null)
+            for (String column : mColumns)
+                if (!PLAIN_COLUMN.matcher(column).matches() || column.trim().toUpperCase(Locale.US).startsWith("DISTINCT"))
+                    return false;
+        return true;
+    }
+
+    String getColumnSql(Filter filter, String column) {
+        if (column == null) {
+            if (mColumns == null || mColumns.length == 0)
+                throw new SimplError("column must be given for queries without columns");
+            column = mColumns[0];
+        }
+        return SimplSql.select(mTable, new String[]{column}, mFilter.getSelection(filter),
+                mFilter.getGroupBy(filter), mFilter.getHaving(filter), mFilter.getOrderBy(filter), "1");
+    }
+
+    Filter getPage(Filter filter, Page page) {
+        return page.apply(mFilter, filter, new OrderBy(mFilter.getOrderBy(filter)));
+    }
+
+    /**
+     * Creates the continuation of {@code page} from the sort keys of the last row of {@code cursor}.
+     * This moves {@code cursor} to its last row.
+     *
+     * @param cursor returned for {@code page}
+     * @param filter applied to {@code page}
+     * @param page   returned as {@code cursor}
+     * @return the next page or {@code null} if {@code page} is the last page
+     */
+    public Page next(Cursor cursor, Filter filter, Page page) {
+        return page.next(cursor, new OrderBy(mFilter.getOrderBy(filter)));
+    }
+
+    Object[] getSelectionArgs(Filter filter) {
+        return mFilter.getSelectionArgs(filter);
+    }
+
+    /**
+     * @return the statistics of the SQL cache of this query
+     */
+    public CacheStats getSqlCacheStats() {
+        synchronized (mSqlCache) {
+            return new CacheStats(mSqlCache.hitCount, mSqlCache.missCount, mSqlCache.evictionCount, mSqlCache.size());
+        }
+    }
+
+    String getSql(Filter filter) {
+        synchronized (mSqlCache) {
+            if (filter == null || filter.isEmpty()) {
+                if (mSql == null) {
+                    mSqlCache.missCount++;
+                    mSql = new Shape(mFilter, null).build(mTable, mColumns);
+                } else {
+                    mSqlCache.hitCount++;
+                }
+                return mSql;
+            }
+
+            Shape shape = new Shape(mFilter, filter);
+            String sql = mSqlCache.get(shape);
+            if (sql == null) {
+                mSqlCache.missCount++;
+                sql = shape.build(mTable, mColumns);
+                mSqlCache.put(shape, sql);
+            } else {
+                mSqlCache.hitCount++;
+            }
+            return sql;
+        }
+    }
+
+    /**
+     * Caches the SQL for the most recently used filter shapes.
+     */
+    private static final class SqlCache extends LinkedHashMap<Shape, String> {
+        private static final long serialVersionUID = 4263172218431702856L;
+
+        long hitCount, missCount, evictionCount;
+
+        SqlCache() {
+            super(SQL_CACHE_SIZE, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Shape, String> eldest) {
+            if (size() <= SQL_CACHE_SIZE)
+                return false;
+            evictionCount++;
+            return true;
+        }
+    }
+
+    /**
+     * Caches the compiled statements of the most recently used scalar queries.
+     * The statements belong to a single database and are closed as soon as another database is used.
+     */
+    private static final class StatementCache extends LinkedHashMap<String, SQLiteStatement> {
+        private static final long serialVersionUID = -3539717096472411375L;
+
+        long hitCount, missCount, evictionCount;
+        private SQLiteDatabase mDb;
+
+        StatementCache() {
+            super(STATEMENT_CACHE_SIZE, 0.75f, true);
+        }
+
+        SQLiteStatement get(SQLiteDatabase db, String sql, Object[] selectionArgs) {
+            if (db != mDb || !db.isOpen()) {
+                for (SQLiteStatement statement : values())
+                    statement.close();
+                clear();
+                mDb = db;
+            }
+
+            SQLiteStatement statement = get(sql);
+            if (statement == null) {
+                missCount++;
+                statement = db.compileStatement(sql);
+                put(sql, statement);
+            } else {
+                hitCount++;
+                statement.clearBindings();
+            }
+            BindArgs.bind(statement, 1, selectionArgs);
+            return statement;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+            if (size() <= STATEMENT_CACHE_SIZE)
+                return false;
+            eldest.getValue().close();
+            evictionCount++;
+            return true;
+        }
+    }
+
+    /**
+     * The clauses of a query with a filter applied.
+     */
+    private static final class Shape {
+        final String selection, groupBy, having, orderBy, limit;
+        private final int mHashCode;
+
+        Shape(Filter query, Filter filter) {
+            selection = query.getSelection(filter);
+            groupBy = query.getGroupBy(filter);
+            having = query.getHaving(filter);
+            orderBy = query.getOrderBy(filter);
+            limit = query.getLimit(filter);
+            mHashCode = Arrays.hashCode(new Object[]{selection, groupBy, having, orderBy, limit});
+        }
+
+        String build(String table, String[] columns) {
+            return SimplSql.select(table, columns, selection, groupBy, having, orderBy, limit);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Shape))
+                return false;
+            Shape shape = (Shape) o;
+            return mHashCode == shape.mHashCode && equals(selection, shape.selection)
+                    && equals(groupBy, shape.groupBy) && equals(having, shape.having)
+                    && equals(orderBy, shape.orderBy) && equals(limit, shape.limit);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
     }
 
     /**
@@ -224,6 +908,463 @@ public class SimplQuery {
         void onQueryFinished(Cursor cursor, Class<? extends QueryDef> queryDef, Filter filter, SimplDb db);
     }
 
+    /**
+     * {@code Page} requests a page of a query using keyset pagination.
+     * <p>
+     * Instead of skipping rows with an offset, each page continues after the sort keys of the last row
+     * of the previous page. The keys are derived from the ORDER BY clause of the query or filter.
+     * Since row values are not supported by older SQLite versions, the keyset condition is expanded to
+     * {@code k1 > ? OR (k1 = ? AND k2 > ?)}, using {@code <} for descending keys.
+     * </p>
+     *
+     * @see SimplQuery#exec(SQLiteDatabase, Filter, Page)
+     * @see SimplQuery#next(Cursor, Filter, Page)
+     */
+    public static final class Page {
+        /**
+         * The maximal count of rows of this page.
+         */
+        public final int size;
+
+        private final Object[] mKeys;
+
+        /**
+         * Creates the first page.
+         *
+         * @param size of the page
+         */
+        public Page(int size) {
+            this(size, (Object[]) null);
+        }
+
+        /**
+         * Creates a page continuing after the row identified by {@code keys}.
+         *
+         * @param size of the page
+         * @param keys of the last row of the previous page in ORDER BY order or {@code null}
+         */
+        public Page(int size, Object... keys) {
+            if (size <= 0)
+                throw new IllegalArgumentException("size must be positive");
+            this.size = size;
+            mKeys = keys != null && keys.length > 0 ? keys.clone() : null;
+        }
+
+        /**
+         * @return the sort keys of the last row of the previous page or {@code null} for the first page
+         */
+        public Object[] getKeys() {
+            return mKeys != null ? mKeys.clone() : null;
+        }
+
+        Page next(Cursor cursor, OrderBy orderBy) {
+            if (cursor.getCount() < size || !cursor.moveToLast())
+                return null;
+            return new Page(size, readKeys(cursor, orderBy));
+        }
+
+        Filter apply(Filter query, Filter filter, OrderBy orderBy) {
+            Filter page = new Filter(filter != null ? filter.id : 0);
+            page.setFrom(filter);
+            page.setLimit(size);
+            if (mKeys == null)
+                return page;
+
+            String[] expressions = orderBy.expressions;
+            if (mKeys.length != expressions.length)
+                throw new IllegalArgumentException("expected " + expressions.length + " keys");
+
+            String selection = query.getSelection(filter);
+            Object[] selectionArgs = query.getSelectionArgs(filter);
+            ArrayList<Object> args = new ArrayList<>();
+            if (selectionArgs != null)
+                args.addAll(Arrays.asList(selectionArgs));
+
+            StringBuilder sb = new StringBuilder();
+            if (selection != null)
+                sb.append('(').append(selection).append(") AND ");
+            sb.append('(');
+            for (int i = 0; i < expressions.length; i++) {
+                if (i > 0)
+                    sb.append(" OR ");
+                sb.append('(');
+                for (int j = 0; j < i; j++) {
+                    sb.append(expressions[j]).append("=? AND ");
+                    args.add(mKeys[j]);
+                }
+                sb.append(expressions[i]).append(orderBy.descending[i] ? "<?" : ">?").append(')');
+                args.add(mKeys[i]);
+            }
+            sb.append(')');
+
+            page.setSelection(sb.toString(), args.toArray());
+            return page;
+        }
+    }
+
+    /**
+     * @return the sort keys of the current row of {@code cursor}
+     */
+    private static Object[] readKeys(Cursor cursor, OrderBy orderBy) {
+        Object[] keys = new Object[orderBy.columns.length];
+        for (int i = 0; i < keys.length; i++) {
+            int column = cursor.getColumnIndexOrThrow(orderBy.columns[i]);
+            keys[i] = ResultCache.Snapshot.getValue(cursor, column);
+        }
+        return keys;
+    }
+
+    /**
+     * The sort keys of an ORDER BY clause.
+     */
+    static final class OrderBy {
+        final String[] expressions, columns;
+        final boolean[] descending;
+
+        OrderBy(String orderBy) {
+            if (orderBy == null)
+                throw new SimplError("keyset pagination requires an orderBy clause");
+
+            String[] terms = split(orderBy);
+            expressions = new String[terms.length];
+            columns = new String[terms.length];
+            descending = new boolean[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                String term = terms[i];
+                String upper = term.toUpperCase(Locale.US);
+                if (upper.endsWith(" DESC")) {
+                    descending[i] = true;
+                    term = term.substring(0, term.length() - 5).trim();
+                } else if (upper.endsWith(" ASC")) {
+                    term = term.substring(0, term.length() - 4).trim();
+                }
+                expressions[i] = term;
+
+                int collate = term.toUpperCase(Locale.US).indexOf(" COLLATE ");
+                String column = collate < 0 ? term : term.substring(0, collate).trim();
+                columns[i] = normalize(column.substring(column.lastIndexOf('.') + 1));
+            }
+        }
+
+        private static String[] split(String orderBy) {
+            ArrayList<String> terms = new ArrayList<>();
+            int depth = 0, start = 0, length = orderBy.length();
+            for (int i = 0; i < length; i++) {
+                char c = orderBy.charAt(i);
+                if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                    int end = orderBy.indexOf(c == '[' ? ']' : c, i + 1);
+                    i = end < 0 ? length : end;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == ',' && depth == 0) {
+                    terms.add(orderBy.substring(start, i).trim());
+                    start = i + 1;
+                }
+            }
+            terms.add(orderBy.substring(start).trim());
+            return terms.toArray(new String[terms.size()]);
+        }
+    }
+
+    /**
+     * {@code SnapshotCallback} for notification of a finished consistent read of several queries.
+     */
+    public interface SnapshotCallback {
+        /**
+         * @param cursors returned for each query in the order requested
+         * @param db      queried
+         */
+        void onSnapshotFinished(Map<Class<? extends QueryDef>, Cursor> cursors, SimplDb db);
+    }
+
+    /**
+     * {@code QueryAllCallback} for notification of finished concurrent queries.
+     */
+    public interface QueryAllCallback {
+        /**
+         * @param cursors      returned for each query in the order requested
+         * @param latencies    of each query in nanoseconds
+         * @param totalLatency of all queries in nanoseconds
+         * @param db           queried
+         */
+        void onQueryAllFinished(Map<Class<? extends QueryDef>, Cursor> cursors,
+                                Map<Class<? extends QueryDef>, Long> latencies, long totalLatency, SimplDb db);
+
+        /**
+         * @param e  thrown by the first failed query
+         * @param db queried
+         */
+        void onQueryAllFailed(RuntimeException e, SimplDb db);
+    }
+
+    /**
+     * {@code CountCallback} for notification of a finished asynchronous count.
+     */
+    public interface CountCallback {
+        /**
+         * @param count    of rows returned for {@code queryDef} with applied {@code filter}
+         * @param queryDef executed
+         * @param filter   applied
+         * @param db       queried
+         */
+        void onCountFinished(long count, Class<? extends QueryDef> queryDef, Filter filter, SimplDb db);
+    }
+
+    /**
+     * {@code ExistsCallback} for notification of a finished asynchronous existence check.
+     */
+    public interface ExistsCallback {
+        /**
+         * @param exists   if {@code queryDef} with applied {@code filter} returns any row
+         * @param queryDef executed
+         * @param filter   applied
+         * @param db       queried
+         */
+        void onExistsFinished(boolean exists, Class<? extends QueryDef> queryDef, Filter filter, SimplDb db);
+    }
+
+    /**
+     * {@code ValueCallback} for notification of a finished asynchronous read of a single value.
+     *
+     * @param <T> of the value
+     */
+    public interface ValueCallback<T> {
+        /**
+         * @param value    of the first row returned for {@code queryDef} with applied {@code filter}
+         *                 or {@code null} if there is no row
+         * @param queryDef executed
+         * @param filter   applied
+         * @param db       queried
+         */
+        void onValueFinished(T value, Class<? extends QueryDef> queryDef, Filter filter, SimplDb db);
+    }
+
+    /**
+     * {@code RowVisitor} for streaming the rows of a query.
+     *
+     * @see SimplQuery#forEach(SQLiteDatabase, Filter, int, RowVisitor)
+     */
+    public interface RowVisitor {
+        /**
+         * @param row positioned at the current row, only valid during this call
+         * @return false to stop the iteration
+         */
+        boolean onRow(Cursor row);
+    }
+
+    /**
+     * {@code Columns} stores the result of a query column by column in primitive arrays.
+     * Integers are stored as {@code long[]}, floats as {@code double[]}, texts as {@code String[]}
+     * and blobs as {@code byte[][]}. The arrays are returned without copying.
+     *
+     * @see SimplQuery#readColumns(SQLiteDatabase, Filter)
+     */
+    public static final class Columns {
+        static final int TYPE_UNKNOWN = -1;
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * The count of rows read.
+         */
+        public final int size;
+
+        private final String[] mNames;
+        private final int[] mTypes;
+        private final Object[] mValues;
+        private final boolean[][] mNulls;
+
+        private Columns(String[] names, int[] types, Object[] values, boolean[][] nulls, int size) {
+            mNames = names;
+            mTypes = types;
+            mValues = values;
+            mNulls = nulls;
+            this.size = size;
+        }
+
+        static int getType(ColumnType type) {
+            switch (type) {
+                case INTEGER:
+                    return Cursor.FIELD_TYPE_INTEGER;
+                case REAL:
+                    return Cursor.FIELD_TYPE_FLOAT;
+                case TEXT:
+                    return Cursor.FIELD_TYPE_STRING;
+                case BLOB:
+                    return Cursor.FIELD_TYPE_BLOB;
+                default:
+                    return TYPE_UNKNOWN;
+            }
+        }
+
+        static Columns read(Cursor cursor, int[] types) {
+            String[] names = cursor.getColumnNames();
+            int count = names.length;
+            Object[] values = new Object[count];
+            boolean[][] nulls = new boolean[count][];
+            int capacity = INITIAL_CAPACITY, size = 0;
+
+            while (cursor.moveToNext()) {
+                if (size == 0) {
+                    for (int i = 0; i < count; i++) {
+                        if (types[i] == TYPE_UNKNOWN)
+                            types[i] = getType(cursor, i);
+                        values[i] = newArray(types[i], capacity);
+                        nulls[i] = new boolean[capacity];
+                    }
+                } else if (size == capacity) {
+                    capacity *= 2;
+                    for (int i = 0; i < count; i++) {
+                        values[i] = copyOf(values[i], capacity);
+                        nulls[i] = Arrays.copyOf(nulls[i], capacity);
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (cursor.isNull(i)) {
+                        nulls[i][size] = true;
+                        continue;
+                    }
+                    switch (types[i]) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            ((long[]) values[i])[size] = cursor.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            ((double[]) values[i])[size] = cursor.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            ((byte[][]) values[i])[size] = cursor.getBlob(i);
+                            break;
+                        default:
+                            ((String[]) values[i])[size] = cursor.getString(i);
+                    }
+                }
+                size++;
+            }
+
+            for (int i = 0; i < count; i++)
+                if (size == 0) {
+                    if (types[i] == TYPE_UNKNOWN)
+                        types[i] = Cursor.FIELD_TYPE_STRING;
+                    values[i] = newArray(types[i], 0);
+                    nulls[i] = new boolean[0];
+                } else if (size < capacity) {
+                    values[i] = copyOf(values[i], size);
+                    nulls[i] = Arrays.copyOf(nulls[i], size);
+                }
+            return new Columns(names, types, values, nulls, size);
+        }
+
+        private static int getType(Cursor cursor, int column) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                int type = getFieldType(cursor, column);
+                if (type != Cursor.FIELD_TYPE_NULL)
+                    return type;
+            }
+            return Cursor.FIELD_TYPE_STRING;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static int getFieldType(Cursor cursor, int column) {
+            return cursor.getType(column);
+        }
+
+        private static Object newArray(int type, int capacity) {
+            switch (type) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return new long[capacity];
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return new double[capacity];
+                case Cursor.FIELD_TYPE_BLOB:
+                    return new byte[capacity][];
+                default:
+                    return new String[capacity];
+            }
+        }
+
+        private static Object copyOf(Object array, int length) {
+            if (array instanceof long[])
+                return Arrays.copyOf((long[]) array, length);
+            if (array instanceof double[])
+                return Arrays.copyOf((double[]) array, length);
+            return Arrays.copyOf((Object[]) array, length);
+        }
+
+        /**
+         * @return the names of all columns
+         */
+        public String[] getNames() {
+            return mNames.clone();
+        }
+
+        private int indexOf(String column) {
+            for (int i = 0; i < mNames.length; i++)
+                if (mNames[i].equals(column))
+                    return i;
+            throw new IllegalArgumentException("column '" + column + "' does not exist");
+        }
+
+        /**
+         * @param column to check
+         * @return one of the {@code FIELD_TYPE_*} constants of {@link Cursor}
+         */
+        public int getType(String column) {
+            return mTypes[indexOf(column)];
+        }
+
+        /**
+         * @param column to read
+         * @return the values of an integer column, null values are stored as 0
+         * @throws IllegalArgumentException if the column is not an integer column
+         */
+        public long[] getLongs(String column) {
+            return get(column, long[].class);
+        }
+
+        /**
+         * @param column to read
+         * @return the values of a float column, null values are stored as 0
+         * @throws IllegalArgumentException if the column is not a float column
+         */
+        public double[] getDoubles(String column) {
+            return get(column, double[].class);
+        }
+
+        /**
+         * @param column to read
+         * @return the values of a text column
+         * @throws IllegalArgumentException if the column is not a text column
+         */
+        public String[] getStrings(String column) {
+            return get(column, String[].class);
+        }
+
+        /**
+         * @param column to read
+         * @return the values of a blob column
+         * @throws IllegalArgumentException if the column is not a blob column
+         */
+        public byte[][] getBlobs(String column) {
+            return get(column, byte[][].class);
+        }
+
+        /**
+         * @param column to read
+         * @return the null mask of the column
+         */
+        public boolean[] getNulls(String column) {
+            return mNulls[indexOf(column)];
+        }
+
+        private <T> T get(String column, Class<T> type) {
+            Object values = mValues[indexOf(column)];
+            if (!type.isInstance(values))
+                throw new IllegalArgumentException("column '" + column + "' is not of type " + type.getSimpleName());
+            return type.cast(values);
+        }
+    }
+
     /**
      * {@code Filter} is used to configure and apply a filter to a query.
      *
@@ -235,8 +1376,11 @@ public class SimplQuery {
          */
         public final int id;
 
+        static final String IN_TABLE = "temp._simpl_in";
+        static final int MAX_IN_ARGS = 512;
+
         private String mSelection, mGroupBy, mHaving, mOrderBy, mLimit;
-        private String[] mSelectionArgs;
+        private Object[] mSelectionArgs, mInValues;
 
         /**
          * Creates a new {@code Filter} with id 0.
@@ -252,10 +1396,15 @@ public class SimplQuery {
             this.id = id;
         }
 
+        boolean isEmpty() {
+            return mSelection == null && mGroupBy == null && mHaving == null && mOrderBy == null && mLimit == null;
+        }
+
         void setFrom(Filter filter) {
             if (filter != null) {
                 mSelection = filter.mSelection;
                 mSelectionArgs = filter.mSelectionArgs;
+                mInValues = filter.mInValues;
                 mGroupBy = filter.mGroupBy;
                 mHaving = filter.mHaving;
                 mOrderBy = filter.mOrderBy;
@@ -272,9 +1421,103 @@ public class SimplQuery {
          * @param selectionArgs or {@code null}
          */
         public void setSelection(String selection, String... selectionArgs) {
+            setSelection(selection, (Object[]) selectionArgs);
+        }
+
+        /**
+         * Sets the selection with typed arguments.
+         * The arguments are bound with their SQLite type instead of TEXT.
+         * Supported types are {@code null}, integral numbers, {@link Boolean}, {@link Double}, {@link Float},
+         * {@code byte[]} and {@link String}.
+         *
+         * @param selection     or {@code null}
+         * @param selectionArgs or {@code null}
+         */
+        public void setSelection(String selection, Object... selectionArgs) {
             mSelection = getNullString(selection);
             boolean noArgs = mSelection == null || selectionArgs == null || selectionArgs.length == 0;
             mSelectionArgs = noArgs ? null : selectionArgs;
+            mInValues = null;
+        }
+
+        /**
+         * Restricts the selection of this filter to rows with {@code column} matching any of {@code values}.
+         * <p>
+         * Small lists are bound as parameters, padded to a power of two to reuse the same statement.
+         * Lists of more than 512 values are stored in a temporary table which is joined instead.
+         * Queries using such a filter fill the table within a short transaction and are read completely
+         * into memory before they return. They are serialized through a lock shared by all databases.
+         * With write-ahead logging they run on the writable connection, since only it has the temporary table,
+         * so they wait for pending writes and block them while reading.
+         * </p>
+         *
+         * @param column to match
+         * @param values to match
+         * @see #setSelection(String, Object...)
+         */
+        public void in(String column, long... values) {
+            Object[] objects = new Object[values.length];
+            for (int i = 0; i < values.length; i++)
+                objects[i] = values[i];
+            setIn(column, objects);
+        }
+
+        /**
+         * Restricts the selection of this filter to rows with {@code column} matching any of {@code values}.
+         *
+         * @param column to match
+         * @param values to match
+         * @see #in(String, long...)
+         */
+        public void in(String column, String... values) {
+            setIn(column, values.clone());
+        }
+
+        private void setIn(String column, Object[] values) {
+            String in;
+            Object[] args;
+            Object[] inValues = null;
+            if (values.length == 0) {
+                in = "0";
+                args = null;
+            } else if (values.length <= MAX_IN_ARGS) {
+                int count = Integer.highestOneBit(values.length);
+                if (count < values.length)
+                    count <<= 1;
+                StringBuilder sb = new StringBuilder(column).append(" IN (?");
+                for (int i = 1; i < count; i++)
+                    sb.append(",?");
+                in = sb.append(')').toString();
+                args = Arrays.copyOf(values, count);
+                Arrays.fill(args, values.length, count, values[values.length - 1]);
+            } else {
+                in = column + " IN (SELECT v FROM " + IN_TABLE + ")";
+                args = null;
+                inValues = values;
+            }
+
+            if (mSelection != null) {
+                if (mInValues != null)
+                    throw new IllegalStateException("only a single large IN list is supported");
+                in = '(' + mSelection + ") AND " + in;
+                if (mSelectionArgs != null)
+                    args = concat(mSelectionArgs, args);
+            }
+            setSelection(in, args);
+            if (inValues != null)
+                mInValues = inValues;
+        }
+
+        private static Object[] concat(Object[] args1, Object[] args2) {
+            if (args2 == null)
+                return args1;
+            Object[] args = Arrays.copyOf(args1, args1.length + args2.length, Object[].class);
+            System.arraycopy(args2, 0, args, args1.length, args2.length);
+            return args;
+        }
+
+        Object[] getInValues() {
+            return mInValues;
         }
 
         /**
@@ -315,7 +1558,7 @@ public class SimplQuery {
             return getNullString(filter.mSelection, mSelection);
         }
 
-        String[] getSelectionArgs(Filter filter) {
+        Object[] getSelectionArgs(Filter filter) {
             if (getSelection(filter) == null)
                 return null;
             if (filter == null || filter.mSelectionArgs == null)
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import simpl.db.db.TestTable;
+import simpl.db.spec.DatabaseSql;
+import simpl.db.spec.TableSpec;
+
+import static org.junit.Assert.assertEquals;
+import static simpl.db.SimplDb.loadTableSpec;
+
+public class DatabaseSqlTest {
+    @Test
+    public void script() throws Exception {
+        TableSpec tableSpec = loadTableSpec(TestTable.class);
+        assertEquals("PRAGMA user_version=2;\n"
+                        + DatabaseSql.SCHEMA_TABLE_SQL + ";\n"
+                        + tableSpec.sql + ";\n"
+                        + tableSpec.indexSql.get("_simpl_test_table_test_index") + ";\n"
+                        + "INSERT INTO _simpl_schema VALUES ('test_table', '" + tableSpec.fingerprint + "');\n",
+                DatabaseSql.getScript(2, Collections.singleton(tableSpec)));
+    }
+}
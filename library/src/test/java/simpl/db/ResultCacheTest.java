@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Christian Schmitz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simpl.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import simpl.db.ResultCache.Key;
+import simpl.db.ResultCache.Snapshot;
+import simpl.db.SimplQuery.Filter;
+import simpl.db.api.TableDef;
+import simpl.db.db.TestQuery;
+import simpl.db.db.TestTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResultCacheTest {
+
+    private static Snapshot snapshot(long bytes) {
+        return new Snapshot(new String[]{TestTable.TEST}, new ArrayList<Object[]>(), bytes);
+    }
+
+    private static Key key(int limit) {
+        Filter filter = new Filter();
+        filter.setLimit(limit);
+        return new Key(TestQuery.class, filter);
+    }
+
+    private static Map<Class<? extends TableDef>, Set<String>> change(String column) {
+        Set<String> columns = column != null ? Collections.singleton(column) : null;
+        return Collections.<Class<? extends TableDef>, Set<String>>singletonMap(TestTable.class, columns);
+    }
+
+    @Test
+    public void key() throws Exception {
+        assertEquals(key(3), key(3));
+        assertEquals(key(3).hashCode(), key(3).hashCode());
+        assertEquals(new Key(TestQuery.class, null), new Key(TestQuery.class, new Filter()));
+    }
+
+    @Test
+    public void evictEntries() throws Exception {
+        ResultCache cache = new ResultCache(2, 100);
+        cache.put(key(1), snapshot(10), cache.getGeneration());
+        cache.put(key(2), snapshot(10), cache.getGeneration());
+        assertNotNull(cache.get(key(1)));
+        cache.put(key(3), snapshot(10), cache.getGeneration());
+
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(3)));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(3, stats.hitCount);
+        assertEquals(1, stats.missCount);
+        assertEquals(1, stats.evictionCount);
+        assertEquals(2, stats.size);
+    }
+
+    @Test
+    public void evictBytes() throws Exception {
+        ResultCache cache = new ResultCache(10, 100);
+        cache.put(key(1), snapshot(60), cache.getGeneration());
+        cache.put(key(2), snapshot(60), cache.getGeneration());
+        cache.put(key(3), snapshot(101), cache.getGeneration());
+
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(2)));
+        assertNull(cache.get(key(3)));
+        assertEquals(1, cache.getStats().evictionCount);
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        ResultCache cache = new ResultCache(10, 100);
+        cache.put(key(1), snapshot(10), cache.getGeneration());
+
+        cache.invalidate(change("unreferenced"));
+        assertNotNull(cache.get(key(1)));
+
+        cache.invalidate(Collections.<Class<? extends TableDef>, Set<String>>singletonMap(TestTable.I.class, null));
+        assertNotNull(cache.get(key(1)));
+
+        cache.invalidate(change(TestTable.TEST));
+        assertNull(cache.get(key(1)));
+
+        cache.put(key(1), snapshot(10), cache.getGeneration());
+        cache.invalidate(change(null));
+        assertNull(cache.get(key(1)));
+        assertEquals(2, cache.getStats().invalidationCount);
+        assertEquals(0, cache.getStats().size);
+
+        cache.put(key(1), snapshot(10), cache.getGeneration());
+        cache.put(key(2), snapshot(10), cache.getGeneration());
+        cache.invalidate(null);
+        assertNull(cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertEquals(0, cache.getStats().size);
+    }
+
+    @Test
+    public void staleGeneration() throws Exception {
+        ResultCache cache = new ResultCache(10, 100);
+        long generation = cache.getGeneration();
+        cache.invalidate(change("unreferenced"));
+        cache.put(key(1), snapshot(10), generation);
+
+        assertNull(cache.get(key(1)));
+    }
+}
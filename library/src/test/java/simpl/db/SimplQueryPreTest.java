@@ -16,12 +16,18 @@
 
 package simpl.db;
 
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
 import org.junit.Test;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashSet;
 
+import simpl.db.SimplQuery.Columns;
 import simpl.db.SimplQuery.Filter;
+import simpl.db.SimplQuery.Page;
 import simpl.db.db.TestJoin;
 import simpl.db.db.TestQuery;
 import simpl.db.db.TestSimplQuery;
@@ -29,6 +35,10 @@ import simpl.db.db.TestTable;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class SimplQueryPreTest {
 
@@ -82,6 +92,190 @@ public class SimplQueryPreTest {
         assertEquals(null, get(query, "mColumns"));
     }
 
+    @Test
+    public void sql() throws Exception {
+        SimplQuery query = SimplQuery.get(TestQuery.class);
+        final String sql = "SELECT test FROM test_table WHERE test=? GROUP BY test HAVING test ORDER BY test LIMIT ";
+        assertEquals(sql + 2, query.getSql(null));
+        assertEquals(sql + 2, query.getSql(new Filter()));
+
+        Filter filter = new Filter();
+        filter.setLimit(5);
+        assertEquals(sql + 5, query.getSql(filter));
+
+        CacheStats stats = query.getSqlCacheStats();
+        Filter equalFilter = new Filter();
+        equalFilter.setLimit(5);
+        assertSame(query.getSql(filter), query.getSql(equalFilter));
+        assertEquals(stats.hitCount + 2, query.getSqlCacheStats().hitCount);
+        assertEquals(stats.missCount, query.getSqlCacheStats().missCount);
+    }
+
+    @Test
+    public void sqlTable() throws Exception {
+        assertEquals("SELECT * FROM " + TestTable.NAME, SimplQuery.get(TestTable.class).getSql(null));
+        SimplQuery query = SimplQuery.get(TestJoin.class);
+        String[] columns = get(query, "mColumns");
+        final String sql = "SELECT " + columns[0] + ", " + columns[1] + " FROM " + TestJoin.NAME + " LIMIT 3";
+        assertEquals(sql, query.getSql(null));
+    }
+
+    @Test
+    public void affectedBy() throws Exception {
+        SimplQuery query = SimplQuery.get(TestJoin.class);
+        assertTrue(query.isAffectedBy(null, null));
+        assertTrue(query.isAffectedBy(Collections.singleton(TestTable.TEST), null));
+        assertTrue(query.isAffectedBy(Collections.singleton(TestTable.I.TEST2), null));
+        assertTrue(query.isAffectedBy(Collections.singleton(SimplDb.quote(TestTable.TEST)), null));
+        assertFalse(query.isAffectedBy(Collections.singleton("last_seen_at"), null));
+        assertFalse(query.isAffectedBy(Collections.<String>emptySet(), null));
+
+        Filter filter = new Filter();
+        filter.setSelection("last_seen_at>? AND 'other'=?", "0", "other");
+        assertTrue(query.isAffectedBy(Collections.singleton("last_seen_at"), filter));
+        assertFalse(query.isAffectedBy(Collections.singleton("other"), filter));
+    }
+
+    @Test
+    public void affectedByTable() throws Exception {
+        SimplQuery query = SimplQuery.get(TestTable.class);
+        assertTrue(query.isAffectedBy(Collections.singleton("last_seen_at"), null));
+    }
+
+    @Test
+    public void typedSelectionArgs() throws Exception {
+        SimplQuery query = SimplQuery.get(TestQuery.class);
+        final Object[] args = {42L, 1.5, new byte[]{1}, null};
+        Filter filter = new Filter();
+        filter.setSelection("test=? OR test=? OR test=? OR test IS ?", args);
+        assertSame(args, query.getSelectionArgs(filter));
+        assertNull(BindArgs.toStrings(args));
+
+        filter.setSelection(TestQuery.SELECTION, "42");
+        assertArrayEquals(new String[]{"42"}, BindArgs.toStrings(query.getSelectionArgs(filter)));
+        assertArrayEquals(new String[]{"42"}, BindArgs.toStrings(new Object[]{"42"}));
+    }
+
+    @Test
+    public void scalarSql() throws Exception {
+        SimplQuery query = SimplQuery.get(TestQuery.class);
+        final String where = " FROM test_table WHERE test=? GROUP BY test HAVING test";
+        assertEquals("SELECT count(*) FROM (" + query.getSql(null) + ")", query.getCountSql(null));
+        assertEquals("SELECT EXISTS (SELECT 1" + where + ")", query.getExistsSql(null));
+        assertEquals("SELECT test" + where + " ORDER BY test LIMIT 1", query.getColumnSql(null, null));
+
+        SimplQuery table = SimplQuery.get(TestTable.class);
+        Filter filter = new Filter();
+        filter.setSelection("test>?", 1L);
+        filter.setOrderBy(TestTable.TEST);
+        assertEquals("SELECT count(*) FROM test_table WHERE test>?", table.getCountSql(filter));
+        assertEquals("SELECT max(test) FROM test_table WHERE test>? ORDER BY test LIMIT 1",
+                table.getColumnSql(filter, "max(test)"));
+
+        SimplQuery aggregate = new ColumnQuery("max(test)");
+        assertEquals("SELECT count(*) FROM (" + aggregate.getSql(filter) + ")", aggregate.getCountSql(filter));
+        assertEquals("SELECT EXISTS (" + aggregate.getSql(filter) + ")", aggregate.getExistsSql(filter));
+
+        SimplQuery distinct = new ColumnQuery("DISTINCT test");
+        assertEquals("SELECT count(*) FROM (" + distinct.getSql(filter) + ")", distinct.getCountSql(filter));
+    }
+
+    @Test
+    public void in() throws Exception {
+        SimplQuery query = SimplQuery.get(TestTable.class);
+        Filter filter = new Filter();
+        filter.in(TestTable.TEST, 1, 2, 3);
+        assertEquals("SELECT * FROM test_table WHERE test IN (?,?,?,?)", query.getSql(filter));
+        assertArrayEquals(new Object[]{1L, 2L, 3L, 3L}, query.getSelectionArgs(filter));
+        assertNull(filter.getInValues());
+
+        filter.setSelection("test>?", 0L);
+        filter.in(TestTable.TEST, "a");
+        assertEquals("SELECT * FROM test_table WHERE (test>?) AND test IN (?)", query.getSql(filter));
+        assertArrayEquals(new Object[]{0L, "a"}, query.getSelectionArgs(filter));
+
+        filter.setSelection("");
+        filter.in(TestTable.TEST, new long[0]);
+        assertEquals("SELECT * FROM test_table WHERE 0", query.getSql(filter));
+    }
+
+    @Test
+    public void inTable() throws Exception {
+        long[] ids = new long[Filter.MAX_IN_ARGS + 1];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = i;
+        Filter filter = new Filter();
+        filter.in(TestTable.TEST, ids);
+        assertEquals("SELECT * FROM test_table WHERE test IN (SELECT v FROM temp._simpl_in)",
+                SimplQuery.get(TestTable.class).getSql(filter));
+        assertEquals(ids.length, filter.getInValues().length);
+
+        Filter copy = new Filter();
+        copy.setFrom(filter);
+        assertSame(filter.getInValues(), copy.getInValues());
+        filter.setSelection("");
+        assertNull(filter.getInValues());
+    }
+
+    @Test(expected = SimplError.class)
+    public void scalarSqlWithoutColumn() throws Exception {
+        SimplQuery.get(TestTable.class).getColumnSql(null, null);
+    }
+
+    @Test
+    public void columns() throws Exception {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id", "value", "name"});
+        for (int i = 0; i < 100; i++)
+            cursor.addRow(new Object[]{i, i % 10 == 0 ? null : i / 2.0, "name" + i});
+
+        int[] types = {Cursor.FIELD_TYPE_INTEGER, Cursor.FIELD_TYPE_FLOAT, Columns.TYPE_UNKNOWN};
+        Columns columns = Columns.read(cursor, types);
+        assertEquals(100, columns.size);
+        assertArrayEquals(new String[]{"id", "value", "name"}, columns.getNames());
+        assertEquals(Cursor.FIELD_TYPE_STRING, columns.getType("name"));
+
+        long[] ids = columns.getLongs("id");
+        double[] values = columns.getDoubles("value");
+        boolean[] nulls = columns.getNulls("value");
+        assertEquals(100, ids.length);
+        assertEquals(99, ids[99]);
+        assertEquals(49.5, values[99], 0);
+        assertTrue(nulls[90]);
+        assertFalse(nulls[91]);
+        assertEquals("name42", columns.getStrings("name")[42]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void columnsType() throws Exception {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id"});
+        Columns.read(cursor, new int[]{Cursor.FIELD_TYPE_INTEGER}).getStrings("id");
+    }
+
+    @Test
+    public void page() throws Exception {
+        SimplQuery query = SimplQuery.get(TestQuery.class);
+        final String sql = "SELECT test FROM test_table WHERE %s GROUP BY test HAVING test ORDER BY %s LIMIT 5";
+
+        Filter first = query.getPage(null, new Page(5));
+        assertEquals(String.format(sql, TestQuery.SELECTION, TestTable.TEST), query.getSql(first));
+        assertArrayEquals(TestQuery.SELECTION_ARGS, query.getSelectionArgs(first));
+
+        Filter filter = new Filter();
+        filter.setOrderBy("t.a DESC, b COLLATE NOCASE");
+        Filter next = query.getPage(filter, new Page(5, 7L, "b"));
+        final String selection = "(" + TestQuery.SELECTION + ") AND ((t.a<?) OR (t.a=? AND b COLLATE NOCASE>?))";
+        assertEquals(String.format(sql, selection, "t.a DESC, b COLLATE NOCASE"), query.getSql(next));
+        assertArrayEquals(new Object[]{TestTable.TEST, 7L, 7L, "b"}, query.getSelectionArgs(next));
+
+        SimplQuery.OrderBy orderBy = new SimplQuery.OrderBy(filter.getOrderBy(null));
+        assertArrayEquals(new String[]{"a", "b"}, orderBy.columns);
+    }
+
+    @Test(expected = SimplError.class)
+    public void pageWithoutOrder() throws Exception {
+        SimplQuery.get(TestTable.class).getPage(null, new Page(5));
+    }
+
     @Test(expected = SimplError.class)
     public void invalidQuery() throws Exception {
         SimplQuery.get(TestQuery.Q1.class);
@@ -109,4 +303,11 @@ public class SimplQueryPreTest {
         field.setAccessible(true);
         return (T) field.get(query);
     }
+
+    @SuppressWarnings("unchecked")
+    private static final class ColumnQuery extends SimplQuery {
+        ColumnQuery(String column) {
+            super(TestTable.NAME, new String[]{column}, null, TestTable.class);
+        }
+    }
 }
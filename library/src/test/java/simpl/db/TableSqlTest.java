@@ -16,39 +16,126 @@
 
 package simpl.db;
 
-import org.junit.BeforeClass;
 import org.junit.Test;
 
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
+import simpl.db.api.Column;
+import simpl.db.api.ColumnType;
+import simpl.db.api.Default;
+import simpl.db.api.NotNull;
+import simpl.db.api.Table;
+import simpl.db.api.TableDef;
+import simpl.db.api.Unique;
 import simpl.db.db.TestTable;
+import simpl.db.internal.SimplSql;
+import simpl.db.spec.TableSpec;
+import simpl.db.spec.TableSql;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
 import static simpl.db.SimplDb.loadTableSpec;
+import static simpl.db.api.ColumnType.INTEGER;
+import static simpl.db.api.ColumnType.TEXT;
 
 public class TableSqlTest {
-    private static TableSql sTable;
+    @Table
+    interface AlterTable extends TableDef {
+        @Column(type = INTEGER)
+        String KEY = "key";
 
-    @BeforeClass
-    public static void setupBuilder() {
-        sTable = new TableSql();
+        @Column(type = TEXT)
+        String NULLABLE = "nullable";
+
+        @Column(type = INTEGER)
+        @NotNull
+        @Default("0")
+        String DEFAULT = "default";
+
+        @Column(type = TEXT)
+        @Unique
+        String UNIQUE = "unique";
     }
 
     @Test
     public void validTable() throws Exception {
-        String sql = String.format(TestTable.SQL, TestTable.NAME);
-        assertEquals(sql, sTable.build(loadTableSpec(TestTable.class), false));
-        assertEquals(sql, sTable.toString());
-        assertEquals(TestTable.NAME, sTable.getName());
-        Set<String> columns = sTable.getColumns();
-        assertTrue(columns.size() == 1 && columns.contains(TestTable.TEST));
+        TableSpec tableSpec = loadTableSpec(TestTable.class);
+        assertEquals(String.format(TestTable.SQL, TestTable.NAME), tableSpec.sql);
+        assertArrayEquals(new String[]{TestTable.TEST}, tableSpec.columns);
+        assertEquals(SimplSql.fingerprint(tableSpec.sql, tableSpec.indexSql.values().iterator().next()),
+                tableSpec.fingerprint);
     }
 
     @Test
     public void tempTable() throws Exception {
         String sql = String.format(TestTable.SQL, '_' + TestTable.NAME);
-        assertEquals(sql, sTable.build(loadTableSpec(TestTable.class), true));
-        assertEquals(sql, sTable.toString());
+        assertEquals(sql, TableSql.getTemporarySql(loadTableSpec(TestTable.class)));
+    }
+
+    @Test
+    public void columnOrder() throws Exception {
+        TableSpec tableSpec = loadTableSpec(AlterTable.class);
+        final String[] columns = {AlterTable.KEY, AlterTable.NULLABLE, AlterTable.DEFAULT, AlterTable.UNIQUE};
+        assertArrayEquals(columns, tableSpec.columns);
+        assertEquals("CREATE TABLE alter_table (\"key\" INTEGER, \"nullable\" TEXT, "
+                + "\"default\" INTEGER NOT NULL DEFAULT 0, \"unique\" TEXT UNIQUE)", tableSpec.sql);
+    }
+
+    @Test
+    public void columnData() throws Exception {
+        TableSpec tableSpec = loadTableSpec(AlterTable.class);
+        assertArrayEquals(new ColumnType[]{INTEGER, TEXT, INTEGER, TEXT}, tableSpec.types);
+        assertArrayEquals(new int[]{
+                TableSpec.FLAG_ADDABLE,
+                TableSpec.FLAG_ADDABLE,
+                TableSpec.FLAG_NOT_NULL | TableSpec.FLAG_DEFAULT | TableSpec.FLAG_ADDABLE,
+                TableSpec.FLAG_UNIQUE}, tableSpec.flags);
+        assertArrayEquals(new String[]{"\"key\" INTEGER", "\"nullable\" TEXT",
+                "\"default\" INTEGER NOT NULL DEFAULT 0", "\"unique\" TEXT UNIQUE"}, tableSpec.definitions);
+    }
+
+    @Test
+    public void indexes() throws Exception {
+        Map<String, String> indexes = loadTableSpec(TestTable.class).indexSql;
+        assertEquals(1, indexes.size());
+        assertEquals("CREATE UNIQUE INDEX \"_simpl_test_table_test_index\" ON test_table (test DESC, abs(test)) WHERE test>0",
+                indexes.get("_simpl_test_table_test_index"));
+    }
+
+    @Test
+    public void definitions() throws Exception {
+        TableSql.Definitions defs = TableSql.Definitions.parse(
+                "CREATE TABLE t (\"a\" TEXT CHECK (a IN ('x,', \"y)\")), b, CONSTRAINT c UNIQUE (a, b)) WITHOUT ROWID");
+        assertEquals(new HashSet<>(Arrays.asList("\"a\" TEXT CHECK (a IN ('x,', \"y)\"))", "b")), defs.columns);
+        assertEquals(Collections.singleton("CONSTRAINT c UNIQUE (a, b)"), defs.constraints);
+        assertEquals("WITHOUT ROWID", defs.options);
+        assertNull(TableSql.Definitions.parse("CREATE TABLE t (a"));
+    }
+
+    @Test
+    public void addedColumns() throws Exception {
+        TableSpec tableSpec = loadTableSpec(AlterTable.class);
+        assertEquals(Collections.emptyList(), TableSql.getAddedColumns(tableSpec, tableSpec.sql));
+
+        final String key = "\"key\" INTEGER";
+        final String nullable = "\"nullable\" TEXT";
+        final String unique = "\"unique\" TEXT UNIQUE";
+        final String notNull = "\"default\" INTEGER NOT NULL DEFAULT 0";
+        List<String> added = TableSql.getAddedColumns(tableSpec, "CREATE TABLE alter_table (" + key + ", " + unique + ")");
+        assertEquals(new HashSet<>(Arrays.asList(nullable, notNull)), new HashSet<>(added));
+
+        assertNull(TableSql.getAddedColumns(tableSpec, "CREATE TABLE alter_table (" + key + ", " + nullable + ")"));
+        assertNull(TableSql.getAddedColumns(tableSpec, "CREATE TABLE alter_table (\"key\" TEXT, " + unique + ")"));
+        assertNull(TableSql.getAddedColumns(tableSpec, tableSpec.sql + " WITHOUT ROWID"));
+    }
+
+    @Test
+    public void fingerprint() throws Exception {
+        assertEquals("5b4085401e259f3918fb1701d3d9399c2c8cce73", SimplSql.fingerprint("b", "a"));
     }
 }
@@ -19,6 +19,7 @@ package simpl.db.db;
 import simpl.db.api.QueryDef;
 import simpl.db.api.Column;
 import simpl.db.api.ColumnType;
+import simpl.db.api.Index;
 import simpl.db.api.Table;
 import simpl.db.api.TableDef;
 
@@ -30,6 +31,9 @@ public interface TestTable extends TableDefProxy, QueryDef {
     @Column(type = ColumnType.INTEGER)
     String TEST = "test";
 
+    @Index(columns = {TEST + " DESC", "abs(" + TEST + ")"}, unique = true, where = TEST + ">0")
+    String TEST_INDEX = "test_index";
+
     @Table
     interface I extends TableDef {
         @Column(type = ColumnType.INTEGER)
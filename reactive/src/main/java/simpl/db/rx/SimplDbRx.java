@@ -197,7 +197,7 @@ public class SimplDbRx extends SimplDb {
                             query(queryDef, filter, callback);
                     }
                 };
-                registerObserver(observer, queryDef);
+                registerObserver(observer, queryDef, filter);
 
                 subscriber.add(Subscriptions.create(new Action0() {
                     @Override
@@ -26,7 +26,7 @@ import simpl.db.api.TableDef;
 public class DeleteTestRule extends SimplDb.Delete implements TestRule {
 
     public DeleteTestRule(Class<? extends TableDef> tableDef, String whereClause) {
-        super(tableDef, whereClause, new String[argCount(whereClause)]);
+        super(tableDef, whereClause, new Object[argCount(whereClause)]);
     }
 
     @Override
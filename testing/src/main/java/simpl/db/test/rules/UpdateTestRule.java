@@ -26,7 +26,7 @@ import simpl.db.api.TableDef;
 public class UpdateTestRule extends SimplDb.Update implements TestRule {
 
     public UpdateTestRule(Class<? extends TableDef> tableDef, String whereClause) {
-        super(tableDef, null, whereClause, new String[argCount(whereClause)]);
+        super(tableDef, null, whereClause, new Object[argCount(whereClause)]);
     }
 
     @Override
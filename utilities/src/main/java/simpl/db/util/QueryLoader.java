@@ -90,7 +90,7 @@ public class QueryLoader extends Loader<Cursor> {
 
     @Override
     protected void onStartLoading() {
-        mDb.registerObserver(mTableObserver, mQueryDef);
+        mDb.registerObserver(mTableObserver, mQueryDef, mFilter);
         if (takeContentChanged() || mData == null || mData.isClosed())
             mDb.query(mQueryDef, mFilter, mQueryCallback);
         else